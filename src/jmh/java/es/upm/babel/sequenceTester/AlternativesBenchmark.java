@@ -0,0 +1,42 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of checking alternatives when all alternatives but the
+ * last one fail.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlternativesBenchmark {
+  @Param({"2", "8", "32"})
+  int alternatives;
+
+  @Param({"100"})
+  int historyLength;
+
+  private Runnable[] assertions;
+
+  @Setup(Level.Trial)
+  public void executeCalls() {
+    new UnitTest("AlternativesBenchmark");
+    for (int i = 0; i < historyLength-1; i++)
+      Execute.exec(new NopCall(i));
+    Call<?> call = new NopCall(historyLength);
+    Execute.exec(call);
+    assertions = new Runnable[alternatives];
+    for (int i = 0; i < alternatives-1; i++)
+      assertions[i] = call::assertBlocks;
+    assertions[alternatives-1] = call::assertUnblocks;
+  }
+
+  @Benchmark
+  public int checkAlternatives() {
+    return SeqAssertions.checkAlternatives(assertions);
+  }
+}
@@ -0,0 +1,53 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares running a long generated sequence whose calls are all created up
+ * front, as subclasses of Call, with running it from a call template, whose
+ * calls are created when executed; either with or without releasing the
+ * calls once they are settled (see Config.setCompactCalls). Run with -prof gc
+ * to compare also the memory allocated by each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CallTemplateBenchmark {
+  @Param({"10000", "100000"})
+  int steps;
+
+  @Param({"false", "true"})
+  boolean compactCalls;
+
+  // Every invocation runs a whole sequence in a new test
+  @Setup(Level.Invocation)
+  public void startTest() {
+    new UnitTest("CallTemplateBenchmark");
+    Config.setTestCompactCalls(compactCalls);
+  }
+
+  @Benchmark
+  public Call<?>[] subclassCalls() {
+    Call<?>[] sequence = new Call<?>[steps];
+    for (int i = 0; i < steps; i++)
+      sequence[i] = new NopCall(i);
+    for (Call<?> call : sequence)
+      call.assertReturns();
+    return sequence;
+  }
+
+  @Benchmark
+  public int templateCalls() {
+    CallTemplate<Integer> nop = CallTemplate.of("nop()", () -> 0);
+    int executed = 0;
+    for (int i = 0; i < steps; i++) {
+      nop.exec().assertReturns();
+      executed++;
+    }
+    return executed;
+  }
+}
@@ -0,0 +1,33 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the overhead of executing a number of trivial calls in parallel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecuteBenchmark {
+  @Param({"1", "8", "64"})
+  int parallelCalls;
+
+  // Every invocation runs in a new test, so that the measured time does not
+  // depend on the calls (and history) accumulated by earlier invocations
+  @Setup(Level.Invocation)
+  public void startTest() {
+    new UnitTest("ExecuteBenchmark");
+  }
+
+  @Benchmark
+  public Execute exec() {
+    Call<?>[] calls = new Call<?>[parallelCalls];
+    for (int i = 0; i < parallelCalls; i++)
+      calls[i] = new NopCall(i);
+    return Execute.exec(calls);
+  }
+}
@@ -0,0 +1,21 @@
+package es.upm.babel.sequenceTester;
+
+/**
+ * A trivial call, which returns immediately, used to measure the
+ * overhead of the library.
+ */
+class NopCall extends ReturningCall<Integer> {
+  private final int value;
+
+  NopCall(int value) {
+    this.value = value;
+  }
+
+  public Integer execute() {
+    return value;
+  }
+
+  public String toString() {
+    return "nop("+value+")";
+  }
+}
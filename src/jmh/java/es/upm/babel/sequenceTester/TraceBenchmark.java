@@ -0,0 +1,32 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the cost of rendering the trace of a test with a long history.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceBenchmark {
+  @Param({"100", "1000", "10000"})
+  int historyLength;
+
+  @Setup(Level.Trial)
+  public void executeCalls() {
+    new UnitTest("TraceBenchmark");
+    for (int i = 0; i < historyLength; i++) {
+      if (i % 10 == 0) Execute.exec(new NopCall(i), new NopCall(-i));
+      else Execute.exec(new NopCall(i));
+    }
+  }
+
+  @Benchmark
+  public String mkTrace() {
+    return UnitTest.mkTrace();
+  }
+}
@@ -0,0 +1,39 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the overhead of asserting which calls were unblocked by an execute,
+ * i.e., of Unblocks.checkCalls as reached through Call.assertUnblocks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnblocksBenchmark {
+  @Param({"1", "8", "64"})
+  int parallelCalls;
+
+  private Call<?> first;
+  private Call<?>[] others;
+
+  @Setup(Level.Trial)
+  public void executeCalls() {
+    new UnitTest("UnblocksBenchmark");
+    Call<?>[] calls = new Call<?>[parallelCalls];
+    for (int i = 0; i < parallelCalls; i++)
+      calls[i] = new NopCall(i);
+    Execute.exec(calls);
+    first = calls[0];
+    others = Arrays.copyOfRange(calls, 1, calls.length);
+  }
+
+  @Benchmark
+  public Call<?> assertUnblocks() {
+    return first.assertUnblocks(others);
+  }
+}
@@ -0,0 +1,207 @@
+package es.upm.babel.sequenceTester;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+/**
+ * Runs the same test suites against many implementations (submissions) in a single JVM.
+ * Each submission (a directory or jar file of classes) is loaded, together with the
+ * test suites, in its own class loader, while the classes of the library and JUnit
+ * (and the texts of messages) are shared, so JVM startup and warm-up are paid once.
+ * Submissions are run concurrently, at most parallelism at a time, and a submission
+ * whose tests do not finish within the timeout is reported as timed out
+ * (its tests are interrupted, and waited for at most the reap time of the library,
+ * if set, see Config.setReapTime, and its classes are closed). A submission which cannot
+ * be run at all is reported with the exception which prevented it
+ * (see SubmissionResult.getError).
+ * <p>
+ * Note that the tests of all submissions share the global configuration
+ * of the library (see {@link Config}), while the latencies of calls (used
+ * for adaptive wait times) and the results of tests are kept per submission.
+ */
+public class BatchRunner {
+  private final URL[] suiteClasspath;
+  private final List<String> suiteClasses;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+  private long timeout = 0;
+
+  /**
+   * Creates a batch runner for the test suites (classes) suiteClasses, found in
+   * the directories and jar files of suiteClasspath.
+   */
+  public BatchRunner(List<Path> suiteClasspath, List<String> suiteClasses) {
+    this.suiteClasspath = toURLs(suiteClasspath);
+    this.suiteClasses = new ArrayList<>(suiteClasses);
+  }
+
+  /**
+   * Sets the maximum number of submissions tested concurrently.
+   */
+  public BatchRunner parallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+    return this;
+  }
+
+  /**
+   * Sets the time (in milliseconds) the tests of a submission may run;
+   * 0 (the default) means no timeout.
+   */
+  public BatchRunner timeout(long timeout) {
+    this.timeout = timeout;
+    return this;
+  }
+
+  /**
+   * Runs the test suites against each submission, returning the results
+   * in the order of the submissions.
+   */
+  public List<SubmissionResult> run(List<Path> submissions) throws InterruptedException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, submissions.size())));
+    try {
+      List<Future<SubmissionResult>> futures = new ArrayList<>();
+      for (Path submission : submissions)
+        futures.add(pool.submit(() -> runSubmission(submission)));
+      List<SubmissionResult> results = new ArrayList<>();
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException exc) {
+          // The submission could not be run at all; its result keeps the cause (and its stack trace)
+          results.add(new SubmissionResult(submissions.get(i), 0, 0, Collections.emptyList(),
+                                           false, exc.getCause(), 0));
+        }
+      }
+      return results;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private SubmissionResult runSubmission(Path submission) throws InterruptedException {
+    URL[] urls = new URL[suiteClasspath.length + 1];
+    urls[0] = toURL(submission);
+    System.arraycopy(suiteClasspath, 0, urls, 1, suiteClasspath.length);
+    SubmissionClassLoader loader = new SubmissionClassLoader(urls, BatchRunner.class.getClassLoader());
+    SummaryGeneratingListener listener = new SummaryGeneratingListener();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+
+    // The tests run in a separate thread, which is abandoned if it times out
+    Thread runner = new Thread(() -> {
+        try {
+          List<DiscoverySelector> selectors = new ArrayList<>();
+          for (String suiteClass : suiteClasses)
+            selectors.add(DiscoverySelectors.selectClass(Class.forName(suiteClass, false, loader)));
+          LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request().selectors(selectors).build();
+          LauncherFactory.create().execute(request, listener);
+        } catch (Throwable exc) {
+          error.set(exc);
+        }
+    }, "batch-runner-"+submission.getFileName());
+    runner.setDaemon(true);
+    runner.setContextClassLoader(loader);
+    long start = System.nanoTime();
+    runner.start();
+    runner.join(timeout);
+    long wallTime = System.nanoTime() - start;
+    boolean timedOut = runner.isAlive();
+    if (timedOut) {
+      // Give the interrupted tests (see Config.setReapTime) the chance to stop
+      // before their classes are closed; a runner which does not stop is abandoned,
+      // as a daemon thread which fails to load further classes of the submission
+      runner.interrupt();
+      if (Config.getReapTime() > 0) runner.join(Config.getReapTime());
+    }
+    closeLoader(loader);
+
+    TestExecutionSummary summary = listener.getSummary();
+    List<String> failures = new ArrayList<>();
+    long testsFound = 0;
+    long testsSucceeded = 0;
+    if (summary != null) {
+      testsFound = summary.getTestsFoundCount();
+      testsSucceeded = summary.getTestsSucceededCount();
+      for (TestExecutionSummary.Failure failure : summary.getFailures())
+        failures.add(failure.getTestIdentifier().getDisplayName()+": "+failure.getException().getMessage());
+    }
+    return new SubmissionResult(submission, testsFound, testsSucceeded, Collections.unmodifiableList(failures),
+                                timedOut, error.get(), wallTime);
+  }
+
+  private static void closeLoader(SubmissionClassLoader loader) {
+    try {
+      loader.close();
+    } catch (IOException exc) {
+      // The classes of the submission are no longer needed
+    }
+  }
+
+  private static URL[] toURLs(List<Path> paths) {
+    URL[] urls = new URL[paths.size()];
+    for (int i = 0; i < urls.length; i++) urls[i] = toURL(paths.get(i));
+    return urls;
+  }
+
+  private static URL toURL(Path path) {
+    try {
+      return path.toUri().toURL();
+    } catch (MalformedURLException exc) {
+      throw new IllegalArgumentException(path+" cannot be loaded", exc);
+    }
+  }
+
+  /**
+   * Runs test suites against submissions, printing the result of each submission:
+   * <pre>
+   * BatchRunner [-j parallelism] [-t timeoutSeconds] -cp suiteClasspath -s suiteClass... submission...
+   * </pre>
+   */
+  public static void main(String[] args) throws InterruptedException {
+    List<Path> suiteClasspath = new ArrayList<>();
+    List<String> suiteClasses = new ArrayList<>();
+    List<Path> submissions = new ArrayList<>();
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    long timeout = 0;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-j") && i + 1 < args.length) parallelism = Integer.parseInt(args[++i]);
+      else if (args[i].equals("-t") && i + 1 < args.length) timeout = TimeUnit.SECONDS.toMillis(Long.parseLong(args[++i]));
+      else if (args[i].equals("-cp") && i + 1 < args.length) {
+        for (String path : args[++i].split(File.pathSeparator)) suiteClasspath.add(Paths.get(path));
+      }
+      else if (args[i].equals("-s") && i + 1 < args.length) suiteClasses.add(args[++i]);
+      else submissions.add(Paths.get(args[i]));
+    }
+    if (suiteClasses.isEmpty() || submissions.isEmpty()) {
+      System.err.println
+        ("usage: BatchRunner [-j parallelism] [-t timeoutSeconds] -cp suiteClasspath -s suiteClass... submission...");
+      System.exit(2);
+    }
+
+    List<SubmissionResult> results =
+      new BatchRunner(suiteClasspath, suiteClasses).parallelism(parallelism).timeout(timeout).run(submissions);
+    for (SubmissionResult result : results) {
+      System.out.println(result);
+      for (String failure : result.getFailures()) System.out.println("  "+failure);
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package es.upm.babel.sequenceTester;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.io.StringWriter;
 import java.io.PrintWriter;
 
@@ -11,29 +13,30 @@ import java.io.PrintWriter;
  * and how it terminated (with an exception or a normal return).
  */
 public abstract class Call<V> extends Tryer {
-  private static int counter = 1;
-
   private final int id;
-  private volatile boolean started = false;
+  private final AtomicBoolean started = new AtomicBoolean(false);
   private Object user;
   private int waitTime;
+  private boolean waitTimeSet = false;
   private final UnitTest unitTest;
-  private volatile boolean hasReturnValue = false;
-  private volatile V returnValue = null;
+  // The configuration of the test when the call was made
+  private Config config;
   private boolean checkedForException = false;
   private boolean checkedForUnblocks = false;
   private Execute execute;
+  // The execution of calls that unblocked the call
+  private volatile Execute unblockedBy = null;
 
   /**
    * Constructs a call. Often this constructor should be 
    * extended in classes which extend the abstract Call class.
    */
   public Call() {
-    this.id = counter++;
+    unitTest = UnitTest.getCurrentTest();
+    this.id = unitTest.nextCallId();
     this.user = getUser();
     // By default we check that the call returns normally.
     this.waitTime = Config.getTestWaitTime();
-    unitTest = UnitTest.getCurrentTest();
     unitTest.getAllCreatedCalls().add(this);
   }
 
@@ -70,6 +73,7 @@ public abstract class Call<V> extends Tryer {
    */
   public Call<V> waitTime(int milliSecs) {
     this.waitTime = milliSecs;
+    this.waitTimeSet = true;
     return this;
   }
 
@@ -87,8 +91,73 @@ public abstract class Call<V> extends Tryer {
     return this.waitTime;
   }
 
+  // Returns the time to wait (in milliseconds) for the call before deciding it has blocked;
+  // unless set explicitly it may be adapted to the latencies observed for the class of the call
+  int blockingWaitTime() {
+    if (waitTimeSet || !Config.getTestAdaptiveWaitTime()) return waitTime;
+    return Config.adaptWaitTime(latencyLoader(), latencyKey(), waitTime);
+  }
+
+  // The class loader and the name under which the latencies of the call are recorded
+  ClassLoader latencyLoader() {
+    return getClass().getClassLoader();
+  }
+
+  String latencyKey() {
+    return getClass().getName();
+  }
+
+  // Returns the time from the start of e (or the start of the call if later)
+  // until the call terminated. If the call terminated before e started,
+  // i.e., after it was decided to be blocked, the complete duration of the call is returned.
+  long unblockLatency(Execute e) {
+    long since = Math.max(getStartTime(), e.getStartTime());
+    if (getEndTime() < since) return getEndTime() - getStartTime();
+    return getEndTime() - since;
+  }
+
+  void unblockedBy(Execute e) {
+    unblockedBy = e;
+  }
+
+  // Returns the metrics of the (executed) call
+  CallMetrics metrics() {
+    Execute unblocker = unblockedBy;
+    long blockedTime;
+    int blockedExecutes;
+    if (unblocker != null) {
+      blockedExecutes = unblocker.getIndex() - execute.getIndex();
+      blockedTime = blockedExecutes == 0 ? 0 : Math.max(0, unblocker.getStartTime() - getStartTime());
+    } else {
+      blockedExecutes = unitTest.getExecutes() - execute.getIndex();
+      blockedTime = System.nanoTime() - getStartTime();
+    }
+    long latency = unblocker != null ? getEndTime() - getStartTime() : -1;
+    return new CallMetrics(toString(), getClass(), unblocker != null, latency, blockedTime, blockedExecutes);
+  }
+
+  // Returns a summary of the (unblocked) call
+  CallRecord record() {
+    return new CallRecord(id, toString(), printCallWithReturn(), metrics());
+  }
+
+  // Returns true if the call has been unblocked and all checks of the call have been made
+  boolean isSettled() {
+    return unblockedBy != null && checkedForUnblocks && (!raisedException() || checkedForException);
+  }
+
   void checkedForException() {
     checkedForException = true;
+    // Only the current test (the test of the call, or an alternative forked from it)
+    // forgets the exception; alternatives run in parallel must not change the test
+    // they were forked from, which adopts the pending exceptions of the winning
+    // alternative (and skips calls already checked)
+    UnitTest test = UnitTest.currentTestOrNull();
+    if (test != null && test.isForkOf(unitTest)) test.exceptionChecked(this);
+  }
+
+  boolean didCheckForException() {
+    return checkedForException;
   }
 
   void checkedForUnblocks() {
@@ -99,16 +168,18 @@ public abstract class Call<V> extends Tryer {
     return checkedForUnblocks;
   }
 
-  static void checkExceptions(Set<Call<?>> calls, boolean calledFromAfter) {
-    for (Call<?> call : calls) {
+  static void checkExceptions(Collection<Call<?>> calls, boolean calledFromAfter) {
+    // Checking a call removes it from the pending exceptions, so iterate over a copy
+    for (Call<?> call : new ArrayList<>(calls)) {
       if (call.raisedException() && !call.checkedForException) {
         Throwable exc = call.getException();
-        StringWriter errors = new StringWriter();
-        exc.printStackTrace(new PrintWriter(errors));
-        String StackTrace = errors.toString();
         call.checkedForException();
 
-	String msg = Texts.getText("the_call_to","S")+call+Texts.getText("raised_an_exception","SP")+exc+"\nStacktrace:\n"+StackTrace+"\n";
+	Supplier<String> msg = () -> {
+	  StringWriter errors = new StringWriter();
+	  exc.printStackTrace(new PrintWriter(errors));
+	  return Texts.format(Message.CALL_RAISED_AN_EXCEPTION, call, exc, errors.toString());
+	};
 	if (calledFromAfter) {
 	  // Note that we have to fill in the execution trace here since this
 	  // fail (in @AfterEach) does not seem to be caught by the exception handler
@@ -122,8 +193,34 @@ public abstract class Call<V> extends Tryer {
    * Executes the call. The method waits a fixed interval of time before returning.
    */
    void makeCall() {
-    started = true;
-    start();
+    config = Config.current();
+    Config.getTestExecutor().execute(this);
+  }
+
+  /**
+   * Runs the call with its test (and the configuration of the test) as the
+   * current test of the executing thread. Afterwards they are removed, as
+   * executor threads are reused and inherit the test of the thread creating them.
+   */
+  public void run() {
+    UnitTest.setCurrentTest(unitTest);
+    Config.installTestConfig(config);
+    try {
+      super.run();
+    } finally {
+      UnitTest.setCurrentTest(null);
+      Config.installTestConfig(null);
+    }
+  }
+
+  void terminated() {
+    EventLog log = unitTest.getEventLog();
+    try {
+      if (log != null) log.append(raisedException() ? EventLog.CALL_EXCEPTION : EventLog.CALL_RETURN, id);
+    } finally {
+      // Also if the log cannot be written, as otherwise the call would seem blocked forever
+      unitTest.callTerminated(this);
+    }
   }
 
   // If a call is not executing force it to execute
@@ -150,21 +247,31 @@ public abstract class Call<V> extends Tryer {
 
   String printCallWithReturn() {
     String callString = printCall();
-    if (raisedException())
-      return callString + Texts.getText("raised","SP") + intGetException();
-    else {
-      if (returnsValue())
-        return callString + Texts.getText("returned","SP") + intGetReturnValue();
-      else
-        return callString;
-    }
+    Outcome outcome = hasStarted() ? getOutcome() : null;
+    if (outcome != null && outcome.exception != null)
+      return Texts.format(Message.CALL_RAISED, callString, outcome.exception);
+    else if (outcome != null && outcome.hasValue)
+      return Texts.format(Message.CALL_RETURNED, callString, outcome.value);
+    else
+      return callString;
   }
 
   /**
    * Returns true if the execution of the call has started.
    */
   boolean hasStarted() {
-    return started;
+    return started.get();
+  }
+
+  // Marks the call as started, returning false if it was already started
+  // (e.g., by an alternative checked in parallel)
+  boolean claimStart() {
+    return started.compareAndSet(false, true);
+  }
+
+  // Undoes claimStart, if the call could not be started after all
+  void releaseStart() {
+    started.set(false);
   }
 
   // In the "current" cclib a tryer may be:
@@ -174,20 +281,23 @@ public abstract class Call<V> extends Tryer {
   // if the call truly blocked AND it did not raise an
   // exception.
   boolean isBlocked() {
-    return super.isBlocked() && !raisedException();
+    return getOutcome() == null;
   }
 
   boolean returnsValue() {
-    return hasStarted() && !isBlocked() && hasReturnValue;
+    if (!hasStarted()) return false;
+    Outcome outcome = getOutcome();
+    return outcome != null && outcome.exception == null && outcome.hasValue;
   }
 
   void setReturnValue(V returnValue) {
-    this.hasReturnValue = true;
-    this.returnValue = returnValue;
+    setResult(returnValue);
   }
 
+  @SuppressWarnings("unchecked")
   V intGetReturnValue() {
-    return returnValue;
+    Outcome outcome = getOutcome();
+    return outcome == null ? null : (V) outcome.value;
   }
 
   Throwable intGetException() {
@@ -205,12 +315,10 @@ public abstract class Call<V> extends Tryer {
     } else return false;
   }
 
-  static void reset() {
-    counter = 1;
-  }
-
   UnitTest getUnitTest() { return unitTest; }
 
+  int getId() { return id; }
+
   void setExecute(Execute e) {
     execute = e;
   }
@@ -230,10 +338,9 @@ public abstract class Call<V> extends Tryer {
    */
   public Call<V> assertUnblocks(Call<?>... calls) {
     forceExecute();
-    List<Call<?>> mustUnblocks = new ArrayList<>();
-    Collections.addAll(mustUnblocks, calls);
-    mustUnblocks.add(this);
-    SeqAssertions.assertUnblocks(this.getExecute(),mustUnblocks);
+    Call<?>[] mustUnblocks = Arrays.copyOf(calls, calls.length + 1);
+    mustUnblocks[calls.length] = this;
+    Unblocks.checkCalls(this.getExecute(), Arrays.asList(mustUnblocks), Collections.emptyList());
     return this;
   }
 
@@ -246,9 +353,7 @@ public abstract class Call<V> extends Tryer {
    */
   public Call<V> assertBlocks(Call<?>... calls) {
     forceExecute();
-    List<Call<?>> mustUnblocks = new ArrayList<>();
-    Collections.addAll(mustUnblocks, calls);
-    SeqAssertions.assertUnblocks(this.getExecute(),mustUnblocks);
+    Unblocks.checkCalls(this.getExecute(), Arrays.asList(calls), Collections.emptyList());
     return this;
   }
 
@@ -263,8 +368,8 @@ public abstract class Call<V> extends Tryer {
     forceExecute();
     checkedForException();
     if (!returnsValue())
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("did_not","SP")+Texts.getText("return_a_value"));
-    return returnValue;
+      UnitTest.failTest(() -> Texts.format(Message.DID_NOT_RETURN_A_VALUE, this));
+    return intGetReturnValue();
   }
 
   /**
@@ -278,7 +383,7 @@ public abstract class Call<V> extends Tryer {
     forceExecute();
     checkedForException();
     if (!raisedException())
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("did_not","SP")+Texts.getText("raise_an_exception"));
+      UnitTest.failTest(() -> Texts.format(Message.DID_NOT_RAISE_AN_EXCEPTION, this));
     return super.getException();
   }
 
@@ -291,7 +396,7 @@ public abstract class Call<V> extends Tryer {
     checkedForUnblocks();
     checkedForException();
     if (!isBlocked())
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("is_not_blocked","P"));
+      UnitTest.failTest(() -> Texts.format(Message.IS_NOT_BLOCKED, this));
     return this;
   }
 
@@ -303,7 +408,7 @@ public abstract class Call<V> extends Tryer {
     forceExecute();
     checkedForUnblocks();
     if (isBlocked())
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("is_still_blocked","P"));
+      UnitTest.failTest(() -> Texts.format(Message.IS_STILL_BLOCKED, this));
     List<Call<?>> mustUnblocks = new ArrayList<>();
     return this;
   }
@@ -318,8 +423,7 @@ public abstract class Call<V> extends Tryer {
     forceExecute();
     checkedForException();
     if (!super.raisedException())
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("did_not","SP")+
-                        Texts.getText("raise_an_exception"));
+      UnitTest.failTest(() -> Texts.format(Message.DID_NOT_RAISE_AN_EXCEPTION, this));
     assertUnblocks(calls);
     return this;
   }
@@ -334,14 +438,10 @@ public abstract class Call<V> extends Tryer {
     forceExecute();
     checkedForException();
     if (hasStarted() && isBlocked()) {
-      UnitTest.failTest(Texts.getText("the_call","S")+this+
-                        Texts.getText("should_have_returned","SP")+
-                        Texts.getText("but","S")+Texts.getText("is_still_blocked"));
+      UnitTest.failTest(() -> Texts.format(Message.SHOULD_HAVE_RETURNED_BUT_IS_STILL_BLOCKED, this));
     } else if (hasStarted() && raisedException()) {
       if (!(hasStarted() && !isBlocked() && !raisedException()))
-        UnitTest.failTest(Texts.getText("the_call", "S")+this+
-                        Texts.getText("should_have_returned","SP")+
-                          Texts.getText("but","S")+Texts.getText("raised_an_exception","S")+this.getException());
+        UnitTest.failTest(() -> Texts.format(Message.SHOULD_HAVE_RETURNED_BUT_RAISED, this, this.getException()));
     }
     assertUnblocks(calls);
     return this;
@@ -357,7 +457,7 @@ public abstract class Call<V> extends Tryer {
     assertReturns();
     V actual = getReturnValue();
     if (!expected.equals(actual))
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("should_have_returned","SP")+Texts.getText("the_value","S")+expected+Texts.getText("but","SP")+Texts.getText("returned","S")+actual); 
+      UnitTest.failTest(() -> Texts.format(Message.SHOULD_HAVE_RETURNED_VALUE, this, expected, actual));
     return this;
   }
 
@@ -371,9 +471,7 @@ public abstract class Call<V> extends Tryer {
     assertRaisedException(calls);
     Class<?> exceptionClass = getExceptionRaised().getClass();
     if (!excClass.isAssignableFrom(exceptionClass)) {
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("should_have","SP")+
-                        Texts.getText("raised_the_exception","S")+excClass+
-                        Texts.getText("but","SP")+Texts.getText("raised_the_exception","S")+exceptionClass);
+      UnitTest.failTest(() -> Texts.format(Message.SHOULD_HAVE_RAISED_THE_EXCEPTION, this, excClass, exceptionClass));
     }
     return this;
   }
@@ -388,8 +486,7 @@ public abstract class Call<V> extends Tryer {
     forceExecute();
     checkedForException();
     if (!returnsValue())
-      UnitTest.failTest(Texts.getText("the_call","S")+this+Texts.getText("did_not","SP")+
-                        Texts.getText("return_a_value"));
+      UnitTest.failTest(() -> Texts.format(Message.DID_NOT_RETURN_A_VALUE, this));
     assertUnblocks(calls);
     return this;
   }
@@ -406,7 +503,7 @@ public abstract class Call<V> extends Tryer {
     forceExecute();
     checkedForException();
     assertReturnsValue(calls);
-    return returnValue;
+    return intGetReturnValue();
   }
 
   /**
@@ -0,0 +1,93 @@
+package es.upm.babel.sequenceTester;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the executors that may run calls, i.e., which supply the thread
+ * (the carrier) that executes a call. An executor is selected using
+ * {@link Config#setExecutor(Executor)} or {@link Config#setTestExecutor(Executor)}.
+ * Note that an executor must never queue a call waiting for another call to
+ * terminate, as calls may block forever.
+ */
+public class CallExecutors {
+  private static ExecutorService pooled = null;
+  private static ExecutorService virtualThreads = null;
+
+  /**
+   * Returns an executor which starts a new platform thread for every call.
+   */
+  public static Executor threadPerCall() {
+    return command -> new Thread(command).start();
+  }
+
+  /**
+   * Returns a shared executor which runs calls in a pool of (daemon) platform threads.
+   * Threads are reused when a call terminates, and new threads are created when
+   * all pooled threads are executing (possibly blocked) calls.
+   */
+  public static synchronized Executor pooled() {
+    if (pooled == null) {
+      AtomicInteger threadCounter = new AtomicInteger(1);
+      ThreadFactory factory = command -> {
+        Thread thread = new Thread(command, "sequenceTester-call-"+threadCounter.getAndIncrement());
+        thread.setDaemon(true);
+        // Pooled threads outlive the tests (e.g., the submissions of a BatchRunner)
+        // creating them, so they must not keep their class loaders reachable
+        thread.setContextClassLoader(CallExecutors.class.getClassLoader());
+        return thread;
+      };
+      pooled = Executors.newCachedThreadPool(factory);
+    }
+    return pooled;
+  }
+
+  /**
+   * Returns true if the Java runtime supports virtual threads.
+   */
+  public static boolean hasVirtualThreads() {
+    return virtualThreadFactoryMethod() != null;
+  }
+
+  /**
+   * Returns a shared executor which runs every call in a new virtual thread.
+   * Note that a virtual thread which blocks inside a synchronized method
+   * may occupy its carrier thread.
+   * @throws UnsupportedOperationException if the Java runtime does not support
+   * virtual threads.
+   */
+  public static synchronized Executor virtualThreads() {
+    if (virtualThreads == null) {
+      Method factoryMethod = virtualThreadFactoryMethod();
+      if (factoryMethod == null)
+        throw new UnsupportedOperationException("virtual threads are not supported by Java "+System.getProperty("java.version"));
+      try {
+        virtualThreads = (ExecutorService) factoryMethod.invoke(null);
+      } catch (ReflectiveOperationException exc) {
+        throw new UnsupportedOperationException("cannot create virtual threads", exc);
+      }
+    }
+    return virtualThreads;
+  }
+
+  /**
+   * Returns the virtual thread executor if the Java runtime supports virtual threads,
+   * and otherwise the pooled executor.
+   */
+  public static Executor best() {
+    return hasVirtualThreads() ? virtualThreads() : pooled();
+  }
+
+  // The library is compiled for Java 8, so virtual threads are looked up reflectively
+  private static Method virtualThreadFactoryMethod() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException exc) {
+      return null;
+    }
+  }
+}
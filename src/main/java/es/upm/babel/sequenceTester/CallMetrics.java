@@ -0,0 +1,72 @@
+package es.upm.babel.sequenceTester;
+
+/**
+ * Timing metrics of an executed call: how long the call took to terminate,
+ * and how long (and across how many executions of calls) it stayed blocked.
+ * Times are in nanoseconds.
+ */
+public final class CallMetrics {
+  private final String call;
+  private final Class<?> callClass;
+  private final boolean unblocked;
+  private final long latency;
+  private final long blockedTime;
+  private final int blockedExecutes;
+
+  CallMetrics(String call, Class<?> callClass, boolean unblocked, long latency, long blockedTime, int blockedExecutes) {
+    this.call = call;
+    this.callClass = callClass;
+    this.unblocked = unblocked;
+    this.latency = latency;
+    this.blockedTime = blockedTime;
+    this.blockedExecutes = blockedExecutes;
+  }
+
+  /**
+   * Returns the call (as printed in traces).
+   */
+  public String getCall() {
+    return call;
+  }
+
+  public Class<?> getCallClass() {
+    return callClass;
+  }
+
+  /**
+   * Returns true if the call has been unblocked.
+   */
+  public boolean isUnblocked() {
+    return unblocked;
+  }
+
+  /**
+   * Returns the time from the start of the call until it terminated,
+   * or -1 if the call is still blocked.
+   */
+  public long getLatency() {
+    return latency;
+  }
+
+  /**
+   * Returns the time the call was blocked, i.e., from its start until the start
+   * of the execution of calls that unblocked it (or until now if still blocked).
+   * The time is 0 for calls unblocked by the execution that started them.
+   */
+  public long getBlockedTime() {
+    return blockedTime;
+  }
+
+  /**
+   * Returns the number of later executions of calls during which the call
+   * was blocked, including the one that unblocked it.
+   */
+  public int getBlockedExecutes() {
+    return blockedExecutes;
+  }
+
+  public String toString() {
+    return call+": latency="+(latency < 0 ? "blocked" : latency/1000+"us")+
+      " blockedTime="+blockedTime/1000+"us blockedExecutes="+blockedExecutes;
+  }
+}
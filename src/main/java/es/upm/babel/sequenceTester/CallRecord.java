@@ -0,0 +1,41 @@
+package es.upm.babel.sequenceTester;
+
+/**
+ * An immutable summary of a call kept, instead of the call itself, by executions
+ * of calls compacted in compact mode (see {@link Config#setCompactCalls(boolean)}).
+ */
+final class CallRecord {
+  private final int id;
+  private final String call;
+  private final String outcome;
+  private final CallMetrics metrics;
+
+  CallRecord(int id, String call, String outcome, CallMetrics metrics) {
+    this.id = id;
+    this.call = call;
+    this.outcome = outcome;
+    this.metrics = metrics;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  // The call as printed in traces, with its return value or exception
+  String getOutcome() {
+    return outcome;
+  }
+
+  CallMetrics getMetrics() {
+    return metrics;
+  }
+
+  // The call as printed in traces
+  String printCall() {
+    return id+": "+call;
+  }
+
+  public String toString() {
+    return call;
+  }
+}
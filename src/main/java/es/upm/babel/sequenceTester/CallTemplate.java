@@ -0,0 +1,128 @@
+package es.upm.babel.sequenceTester;
+
+/**
+ * Describes a call by an operation (e.g., a lambda) instead of by a subclass of Call.
+ * A template can be executed any number of times, and the call of each execution
+ * is created only when it is executed, so generated tests need neither a class per
+ * operation nor the calls of all their steps up front. Executing a call of a
+ * template costs about as much as executing a subclass of Call; combined with
+ * Config.setCompactCalls the calls are moreover released once they are settled.
+ * Calls are not recycled, since the history of a test refers to them.
+ * Adaptive wait times (see Config.setAdaptiveWaitTime) are adapted per template name.
+ */
+public final class CallTemplate<V> {
+
+  /**
+   * The operation of a call which returns a value.
+   */
+  @FunctionalInterface
+  public interface Operation<V> {
+    V execute() throws Throwable;
+  }
+
+  /**
+   * The operation of a call which does not return a value.
+   */
+  @FunctionalInterface
+  public interface VoidOperation {
+    void execute() throws Throwable;
+  }
+
+  private final String name;
+  private final Operation<V> operation;
+  // The class loader of the operation, under which the latencies of the calls are recorded
+  private final ClassLoader loader;
+  private final boolean returnsValue;
+  private final Object user;
+  // The wait time of the calls, or -1 if the wait time of the test is used
+  private final int waitTime;
+
+  private CallTemplate(String name, Operation<V> operation, ClassLoader loader, boolean returnsValue, Object user, int waitTime) {
+    this.name = name;
+    this.operation = operation;
+    this.loader = loader;
+    this.returnsValue = returnsValue;
+    this.user = user;
+    this.waitTime = waitTime;
+  }
+
+  /**
+   * Returns a template of calls named name which perform operation, returning its value.
+   */
+  public static <V> CallTemplate<V> of(String name, Operation<V> operation) {
+    return new CallTemplate<>(name, operation, operation.getClass().getClassLoader(), true, null, -1);
+  }
+
+  /**
+   * Returns a template of calls named name which perform operation, and do not return a value.
+   */
+  public static CallTemplate<Void> ofVoid(String name, VoidOperation operation) {
+    return new CallTemplate<>(name, () -> { operation.execute(); return null; },
+                              operation.getClass().getClassLoader(), false, null, -1);
+  }
+
+  /**
+   * Returns a template whose calls are made by user (see Call.user).
+   */
+  public CallTemplate<V> user(Object user) {
+    return new CallTemplate<>(name, operation, loader, returnsValue, user, waitTime);
+  }
+
+  /**
+   * Returns a template whose calls wait milliSecs milliseconds until deciding
+   * they have blocked (see Call.waitTime).
+   */
+  public CallTemplate<V> w(int milliSecs) {
+    return new CallTemplate<>(name, operation, loader, returnsValue, user, milliSecs);
+  }
+
+  /**
+   * Creates a call of the template, which can be executed (e.g., using Execute.exec)
+   * together with other calls.
+   */
+  public Call<V> call() {
+    Call<V> call = new TemplateCall<>(this);
+    if (user != null) call.setUser(user);
+    if (waitTime >= 0) call.waitTime(waitTime);
+    return call;
+  }
+
+  /**
+   * Creates a call of the template and executes it.
+   */
+  public Call<V> exec() {
+    Call<V> call = call();
+    Execute.exec(call);
+    return call;
+  }
+
+  public String toString() {
+    return name;
+  }
+
+  // A call of a template
+  private static final class TemplateCall<V> extends Call<V> {
+    private final CallTemplate<V> template;
+
+    TemplateCall(CallTemplate<V> template) {
+      this.template = template;
+    }
+
+    void toTry() throws Throwable {
+      V value = template.operation.execute();
+      if (template.returnsValue) setReturnValue(value);
+    }
+
+    ClassLoader latencyLoader() {
+      return template.loader;
+    }
+
+    String latencyKey() {
+      return template.name;
+    }
+
+    public String toString() {
+      return template.name;
+    }
+  }
+}
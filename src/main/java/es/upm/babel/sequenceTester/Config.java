@@ -1,28 +1,111 @@
 package es.upm.babel.sequenceTester;
 
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
 /** 
  * Permits a number of configuration parameters, either on a unit test basis or for the duration of 
  * a config class which is created by the UnitTest class constructor.
  */
 
 public class Config {
-  private static int WaitTime = 250;
-  private static boolean randomize = false;
-  static Config currentConfig = new Config();
+  private static volatile int WaitTime = 250;
+  private static volatile boolean randomize = false;
+  private static volatile Executor executor = CallExecutors.pooled();
+  private static volatile int traceWindow = 0;
+  private static volatile int timeBudget = 0;
+  private static volatile int reapTime = 0;
+  private static volatile boolean compactCalls = false;
+  private static volatile boolean quiescenceDetection = false;
+  private static volatile int quiescenceInterval = 20;
+  private static volatile boolean parallelAlternatives = false;
+  private static volatile boolean adaptiveWaitTime = false;
+  private static volatile double adaptivePercentile = 0.99;
+  private static volatile double adaptiveSafetyFactor = 4.0;
+  private static volatile int adaptiveMinSamples = 20;
+  private static volatile int adaptiveMinWaitTime = 50;
+  private static volatile Locale locale = new Locale("es");
+  // Generates the seeds of tests which do not set a seed
+  private static final Random seeds = new Random();
+  // Latencies of unblocked calls observed during the run, per class loader and name of the
+  // call class (or call template), so that the submissions tested by a BatchRunner are not mixed, and their
+  // classes are not kept reachable
+  private static final PerClassLoader<ConcurrentHashMap<String,LatencyHistogram>> callLatencies =
+    new PerClassLoader<>(ConcurrentHashMap::new);
+  // The test configuration of a thread (and of the threads it creates)
+  private static final InheritableThreadLocal<Config> currentConfig = new InheritableThreadLocal<Config>() {
+    @Override
+    protected Config initialValue() {
+      return new Config();
+    }
+  };
 
   int testWaitTime;
   boolean testRandomize;
+  Executor testExecutor;
+  boolean testAdaptiveWaitTime;
+  int testTraceWindow;
+  int testTimeBudget;
+  boolean testCompactCalls;
+  boolean testQuiescenceDetection;
+  boolean testParallelAlternatives;
+  long testSeed;
+  Random testRandom;
+  Locale testLocale;
 
   Config() {
     testWaitTime = WaitTime;
     testRandomize = randomize;
+    testExecutor = executor;
+    testAdaptiveWaitTime = adaptiveWaitTime;
+    testTraceWindow = traceWindow;
+    testTimeBudget = timeBudget;
+    testCompactCalls = compactCalls;
+    testQuiescenceDetection = quiescenceDetection;
+    testParallelAlternatives = parallelAlternatives;
+    testSeed = seeds.nextLong();
+    testRandom = new Random(testSeed);
+    testLocale = locale;
+  }
+
+  // Returns a copy of the configuration, e.g., for a forked test
+  Config copy() {
+    Config config = new Config();
+    config.testWaitTime = testWaitTime;
+    config.testRandomize = testRandomize;
+    config.testExecutor = testExecutor;
+    config.testAdaptiveWaitTime = testAdaptiveWaitTime;
+    config.testTraceWindow = testTraceWindow;
+    config.testTimeBudget = testTimeBudget;
+    config.testCompactCalls = testCompactCalls;
+    config.testQuiescenceDetection = testQuiescenceDetection;
+    config.testParallelAlternatives = testParallelAlternatives;
+    config.testSeed = testSeed;
+    config.testRandom = new Random(testSeed);
+    config.testLocale = testLocale;
+    return config;
   }
 
   /**
    * Installs a new test configuration
    */
   static void installTestConfig() {
-    currentConfig = new Config();
+    currentConfig.set(new Config());
+  }
+
+  // Installs config as the test configuration of the calling thread
+  // (or removes the test configuration if config is null)
+  static void installTestConfig(Config config) {
+    if (config == null) currentConfig.remove();
+    else currentConfig.set(config);
+  }
+
+  static Config current() {
+    return currentConfig.get();
   }
 
   /**
@@ -43,14 +126,14 @@ public class Config {
    * Returns the test maximum wait time (in milliseconds)
    */
   public static int getTestWaitTime() {
-    return currentConfig.testWaitTime;
+    return current().testWaitTime;
   }
 
   /**
    * Sets the confis maximum wait time (in milliseconds)
    */
   public static void setTestWaitTime(int waitTime) {
-    currentConfig.testWaitTime = waitTime;
+    current().testWaitTime = waitTime;
   }
 
   /**
@@ -73,14 +156,359 @@ public class Config {
    * order of running of multiple calls).
    */
   public static boolean getTestRandomize() {
-    return currentConfig.testRandomize;
+    return current().testRandomize;
   }
 
   /**
    * Sets the randomize flag.
    */
   public static void setTestRandomize(boolean waitTime) {
-    currentConfig.testRandomize = waitTime;
+    current().testRandomize = waitTime;
+  }
+
+  /**
+   * Returns the seed of the random generator of the current test,
+   * which determines the starting order of calls when randomizing
+   * (see {@link #setTestRandomize(boolean)}).
+   */
+  public static long getTestSeed() {
+    return current().testSeed;
+  }
+
+  /**
+   * Sets the seed of the random generator of the current test, e.g., to reproduce
+   * the starting order of calls of a failed schedule found by {@link Explore}.
+   */
+  public static void setTestSeed(long seed) {
+    Config config = current();
+    config.testSeed = seed;
+    config.testRandom = new Random(seed);
+  }
+
+  static Random getTestRandom() {
+    return current().testRandom;
+  }
+
+  /**
+   * Returns the standard executor used to run calls.
+   */
+  public static Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Sets the standard executor used to run calls (see {@link CallExecutors}).
+   */
+  public static void setExecutor(Executor callExecutor) {
+    executor = callExecutor;
+  }
+
+  /**
+   * Returns the executor used to run calls in the current test.
+   */
+  public static Executor getTestExecutor() {
+    return current().testExecutor;
+  }
+
+  /**
+   * Sets the executor used to run calls in the current test (see {@link CallExecutors}).
+   */
+  public static void setTestExecutor(Executor callExecutor) {
+    current().testExecutor = callExecutor;
+  }
+
+  /**
+   * Returns the standard trace window, i.e., the maximum number of steps shown in call traces.
+   */
+  public static int getTraceWindow() {
+    return traceWindow;
+  }
+
+  /**
+   * Sets the standard trace window, i.e., the maximum number of steps shown in call traces.
+   * Only the last steps are shown, preceded by a summary of the omitted steps.
+   * A window of 0 (the default) shows all steps.
+   */
+  public static void setTraceWindow(int steps) {
+    traceWindow = steps;
+  }
+
+  /**
+   * Returns the trace window of the current test.
+   */
+  public static int getTestTraceWindow() {
+    return current().testTraceWindow;
+  }
+
+  /**
+   * Sets the trace window of the current test.
+   */
+  public static void setTestTraceWindow(int steps) {
+    current().testTraceWindow = steps;
+  }
+
+  /**
+   * Returns the standard time budget of a test (in milliseconds).
+   */
+  public static int getTimeBudget() {
+    return timeBudget;
+  }
+
+  /**
+   * Sets the standard time budget of a test (in milliseconds), i.e., the maximum time
+   * from the creation of a test until its last execution of calls terminates.
+   * A test which exceeds its budget fails. A budget of 0 (the default) means no budget.
+   */
+  public static void setTimeBudget(int budget) {
+    timeBudget = budget;
+  }
+
+  /**
+   * Returns the time budget of the current test (in milliseconds).
+   */
+  public static int getTestTimeBudget() {
+    return current().testTimeBudget;
+  }
+
+  /**
+   * Sets the time budget of the current test (in milliseconds).
+   */
+  public static void setTestTimeBudget(int budget) {
+    current().testTimeBudget = budget;
+  }
+
+  /**
+   * Returns the value of the compact calls flag.
+   */
+  public static boolean getCompactCalls() {
+    return compactCalls;
+  }
+
+  /**
+   * Sets the standard value of the compact calls flag. In compact mode a test stops
+   * referencing a call once it has been unblocked and checked, and an execution of calls
+   * whose calls are all checked (except the last execution) keeps only its trace
+   * and an immutable summary of each call, so that long tests do not keep all their
+   * calls (and their return values) alive. The getCalls, getUnblockedCalls and getBlockedCalls
+   * methods of such a compacted execution return empty collections.
+   */
+  public static void setCompactCalls(boolean compact) {
+    compactCalls = compact;
+  }
+
+  /**
+   * Returns the value of the compact calls flag of the current test.
+   */
+  public static boolean getTestCompactCalls() {
+    return current().testCompactCalls;
+  }
+
+  /**
+   * Sets the value of the compact calls flag of the current test.
+   */
+  public static void setTestCompactCalls(boolean compact) {
+    current().testCompactCalls = compact;
+  }
+
+  /**
+   * Returns the value of the quiescence detection flag.
+   */
+  public static boolean getQuiescenceDetection() {
+    return quiescenceDetection;
   }
-}
 
+  /**
+   * Sets the quiescence detection flag. When set, an execution of calls
+   * stops waiting before the wait time has passed if the threads of all
+   * running calls wait (WAITING or BLOCKED, not sleeping) without making
+   * progress during the quiescence interval (see setQuiescenceInterval).
+   * Only the threads of running calls are sampled, so a call which would be woken
+   * by another thread (e.g., a background thread of the tested code, or a timer)
+   * may be declared blocked too early; enable the detection only when the calls
+   * can only be woken by other calls. Calls which run on virtual threads are
+   * waited for as usual.
+   */
+  public static void setQuiescenceDetection(boolean detect) {
+    quiescenceDetection = detect;
+  }
+
+  /**
+   * Returns the value of the quiescence detection flag of the current test.
+   */
+  public static boolean getTestQuiescenceDetection() {
+    return current().testQuiescenceDetection;
+  }
+
+  /**
+   * Sets the value of the quiescence detection flag of the current test.
+   */
+  public static void setTestQuiescenceDetection(boolean detect) {
+    current().testQuiescenceDetection = detect;
+  }
+
+  /**
+   * Returns the time (in milliseconds) the threads of the running calls must
+   * wait without progress to be considered blocked (see setQuiescenceDetection).
+   */
+  public static int getQuiescenceInterval() {
+    return quiescenceInterval;
+  }
+
+  /**
+   * Sets the time (in milliseconds) the threads of the running calls must
+   * wait without progress to be considered blocked (see setQuiescenceDetection).
+   */
+  public static void setQuiescenceInterval(int interval) {
+    quiescenceInterval = interval;
+  }
+
+  /**
+   * Returns the time (in milliseconds) a finished test waits for its blocked calls
+   * to terminate after interrupting them (see setReapTime).
+   */
+  public static int getReapTime() {
+    return reapTime;
+  }
+
+  /**
+   * Sets the time (in milliseconds) a finished test waits for its blocked calls
+   * to terminate after interrupting them. Calls which do not terminate are
+   * reported (with their stack traces) on the standard error.
+   * A reap time of 0 (the default) means that the blocked calls of a test are
+   * left blocked, unless the test has a time budget (see setTimeBudget), in which
+   * case they are interrupted and waited for 100 milliseconds.
+   */
+  public static void setReapTime(int time) {
+    reapTime = time;
+  }
+
+  /**
+   * Returns the value of the parallel alternatives flag.
+   */
+  public static boolean getParallelAlternatives() {
+    return parallelAlternatives;
+  }
+
+  /**
+   * Sets the parallel alternatives flag. When set, the alternatives
+   * of SeqAssertions.checkAlternatives are checked in parallel, each on a
+   * separate copy of the test state. Note that alternatives then must
+   * be independent, i.e., must not execute the same calls nor
+   * calls which affect each other.
+   */
+  public static void setParallelAlternatives(boolean parallel) {
+    parallelAlternatives = parallel;
+  }
+
+  /**
+   * Returns the value of the parallel alternatives flag for the current test.
+   */
+  public static boolean getTestParallelAlternatives() {
+    return current().testParallelAlternatives;
+  }
+
+  /**
+   * Sets the parallel alternatives flag for the current test.
+   */
+  public static void setTestParallelAlternatives(boolean parallel) {
+    current().testParallelAlternatives = parallel;
+  }
+
+  /**
+   * Returns the standard locale of messages.
+   */
+  public static Locale getLocale() {
+    return locale;
+  }
+
+  /**
+   * Sets the standard locale of messages, i.e., the locale of the tests created afterwards.
+   */
+  public static void setLocale(Locale messageLocale) {
+    Texts.table(messageLocale);
+    locale = messageLocale;
+  }
+
+  /**
+   * Returns the locale of the messages of the current test.
+   */
+  public static Locale getTestLocale() {
+    return current().testLocale;
+  }
+
+  /**
+   * Sets the locale of the messages of the current test.
+   */
+  public static void setTestLocale(Locale messageLocale) {
+    Texts.table(messageLocale);
+    current().testLocale = messageLocale;
+  }
+
+  /**
+   * Returns the value of the adaptive wait time flag.
+   */
+  public static boolean getAdaptiveWaitTime() {
+    return adaptiveWaitTime;
+  }
+
+  /**
+   * Sets the adaptive wait time flag. When set, the time waited for a call
+   * before deciding that it has blocked is derived from the latencies
+   * observed for earlier calls of the same class (or call template) during the run
+   * (a high percentile multiplied by a safety factor), limited by the
+   * maximum wait time. Calls whose wait time is set explicitly are not adapted.
+   */
+  public static void setAdaptiveWaitTime(boolean adaptive) {
+    adaptiveWaitTime = adaptive;
+  }
+
+  /**
+   * Returns the value of the adaptive wait time flag for the current test.
+   */
+  public static boolean getTestAdaptiveWaitTime() {
+    return current().testAdaptiveWaitTime;
+  }
+
+  /**
+   * Sets the adaptive wait time flag for the current test.
+   */
+  public static void setTestAdaptiveWaitTime(boolean adaptive) {
+    current().testAdaptiveWaitTime = adaptive;
+  }
+
+  /**
+   * Sets the parameters of adaptive wait times: the latency percentile (between 0 and 1),
+   * the factor multiplied with the latency percentile,
+   * the number of latencies of a call class that must have been observed before adapting its wait time,
+   * and the minimum adapted wait time (in milliseconds).
+   * The defaults are 0.99, 4, 20 and 50 milliseconds; note that on a loaded machine
+   * a smaller minimum wait time may make calls which are merely slow seem blocked.
+   */
+  public static void setAdaptiveWaitTimeParameters(double percentile, double safetyFactor, int minSamples, int minWaitTime) {
+    if (percentile <= 0 || percentile > 1 || safetyFactor < 1 || minSamples < 1 || minWaitTime < 0)
+      throw new IllegalArgumentException("illegal adaptive wait time parameters");
+    adaptivePercentile = percentile;
+    adaptiveSafetyFactor = safetyFactor;
+    adaptiveMinSamples = minSamples;
+    adaptiveMinWaitTime = minWaitTime;
+  }
+
+  static void recordLatency(ClassLoader loader, String key, long nanos) {
+    callLatencies.get(loader).computeIfAbsent(key, c -> new LatencyHistogram()).record(nanos);
+  }
+
+  // Returns the latencies of the call classes loaded by the context class loader
+  static Map<String,LatencyHistogram> getCallLatencies() {
+    return Collections.unmodifiableMap(callLatencies.get());
+  }
+
+  // Returns the wait time (in milliseconds) for calls whose latencies are recorded under key
+  // (see Call.latencyKey), derived from the latencies observed so far, but never more than maxWaitTime
+  static int adaptWaitTime(ClassLoader loader, String key, int maxWaitTime) {
+    LatencyHistogram latencies = callLatencies.get(loader).get(key);
+    if (latencies == null || latencies.getCount() < adaptiveMinSamples)
+      return maxWaitTime;
+    double threshold = latencies.getValueAtPercentile(adaptivePercentile) * adaptiveSafetyFactor / 1000000.0;
+    return (int) Math.min(maxWaitTime, Math.max(adaptiveMinWaitTime, Math.ceil(threshold)));
+  }
+}
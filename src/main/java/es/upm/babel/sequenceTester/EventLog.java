@@ -0,0 +1,104 @@
+package es.upm.babel.sequenceTester;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An append-only binary log of the events of a test (executes, call starts and
+ * terminations, poll ticks and unblocked calls), used to record the schedule of
+ * a test and to replay it (see {@link Replay}).
+ * The log file is memory-mapped in chunks, and appending an event reserves
+ * a fixed-size record using an atomic counter, so calls may append their
+ * events concurrently without locking.
+ * <p>
+ * The file starts with a header (the magic number, the format version and
+ * the number of records, written when the log is closed) followed by records
+ * consisting of the event type (a byte, padded to an int), an int value (a call
+ * identifier or an execute index) and the time of the event
+ * (in nanoseconds since the log was created).
+ */
+final class EventLog implements Closeable {
+  static final byte EXECUTE_BEGIN = 1;
+  static final byte CALL_START = 2;
+  static final byte CALL_RETURN = 3;
+  static final byte CALL_EXCEPTION = 4;
+  static final byte POLL_TICK = 5;
+  static final byte UNBLOCKED = 6;
+  static final byte EXECUTE_END = 7;
+
+  static final int MAGIC = 0x53544c47;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int RECORD_SIZE = 16;
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final long origin = System.nanoTime();
+  private final AtomicLong records = new AtomicLong();
+  private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+  private volatile boolean closed = false;
+
+  EventLog(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer header = chunk(0);
+    header.putInt(0, MAGIC);
+    header.putInt(4, VERSION);
+  }
+
+  /**
+   * Appends an event. Events appended after the log has been closed
+   * (e.g., by calls terminating after the end of a test) are ignored.
+   */
+  void append(byte type, int value) {
+    if (closed) return;
+    long offset = HEADER_SIZE + records.getAndIncrement() * RECORD_SIZE;
+    MappedByteBuffer chunk;
+    try {
+      chunk = chunk((int) (offset / CHUNK_SIZE));
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+    int position = (int) (offset % CHUNK_SIZE);
+    chunk.putInt(position + 4, value);
+    chunk.putLong(position + 8, System.nanoTime() - origin);
+    chunk.put(position, type);
+  }
+
+  // Returns the mapped chunk (mapping it if necessary); chunks are
+  // published copy-on-write so that appending normally does not lock
+  private MappedByteBuffer chunk(int index) throws IOException {
+    MappedByteBuffer[] current = chunks;
+    if (index < current.length) return current[index];
+    synchronized (this) {
+      current = chunks;
+      if (index >= current.length) {
+        MappedByteBuffer[] extended = Arrays.copyOf(current, index + 1);
+        for (int i = current.length; i <= index; i++)
+          extended[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * CHUNK_SIZE, CHUNK_SIZE);
+        chunks = current = extended;
+      }
+      return current[index];
+    }
+  }
+
+  /**
+   * Writes the number of records to the header and closes the log. The file is not
+   * truncated, as calls may still write to the mapped chunks.
+   */
+  public synchronized void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    MappedByteBuffer[] current = chunks;
+    current[0].putLong(8, records.get());
+    for (MappedByteBuffer chunk : current) chunk.force();
+    channel.close();
+  }
+}
@@ -1,11 +1,20 @@
 package es.upm.babel.sequenceTester;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.Random;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
@@ -14,28 +23,62 @@ import java.util.Random;
  * and which calls remain blocked.
  */
 public class Execute {
-  private static final Random rand = new Random();
-
   private final UnitTest t = UnitTest.getCurrentTest();
   private Set<Call<?>> unblockedCalls;
+  // The identifiers of the unblocked calls
+  private BitSet unblockedIds = new BitSet();
   private Set<Call<?>> blockedCalls;
-  private final List<Call<?>> calls;
+  private List<Call<?>> calls;
+  // The summaries of the calls of a compacted execute (see Config.setCompactCalls)
+  private List<CallRecord> records = null;
+  // The number of calls of the execute which are settled
+  private int settled = 0;
+  private long startTime;
+  private int index;
+  private int pollTicks = 0;
+
+  // The rendered trace of the execute, and the locale used to render it
+  private String trace = null;
+  private Locale traceLocale = null;
 
   private Execute(List<Call<?>> calls) {
     this.calls = calls;
   }
   
   /**
-   * Execute the calls in paralell.
+   * Execute the calls in paralell. When there are several calls, the threads
+   * running them are prepared first, and then released together, so that the
+   * calls overlap also when there are many of them. If the executor of the test
+   * does not provide threads for all calls, the calls are released after the
+   * wait time of the test, and a call which does not start within the wait time
+   * of the test (or its own wait time, if longer) fails the test (see Config.setExecutor).
    */
   public static Execute exec(Call<?>... calls) {
+    return exec(Arrays.asList(calls));
+  }
+
+  /**
+   * Execute the calls in parallel, releasing them together (as exec(Call...)).
+   */
+  public static Execute exec(Collection<? extends Call<?>> calls) {
+    return exec(new ArrayList<Call<?>>(calls));
+  }
+
+  /**
+   * Execute the calls in parallel, releasing them together (as exec(Call...)).
+   */
+  public static Execute exec(Stream<? extends Call<?>> calls) {
+    return exec(calls.collect(Collectors.<Call<?>>toList()));
+  }
+
+  private static Execute exec(List<Call<?>> calls) {
     for (Call<?> call : calls) {
       if (call.hasStarted())
         UnitTest.failTestSyntax
           ("Call "+call+" has already run; it cannot be re-run",
            UnitTest.ErrorLocation.AFTER);
     }
-    Execute e = new Execute(Arrays.asList(calls));
+    Execute e = new Execute(calls);
     e.exec();
     return e;
   }
@@ -43,13 +86,19 @@ public class Execute {
   void exec() {
     if (calls.size() == 0) UnitTest.failTestSyntax("trying to execute 0 calls", UnitTest.ErrorLocation.AFTER);
     // First check if any previous completed calls raised an exception which has not been handled
-    if (t.getAllUnblockedCalls() != null) Call.checkExceptions(t.getAllUnblockedCalls(), false);
+    Call.checkExceptions(t.getPendingExceptions(), false);
+    checkTimeBudget();
 
-    // Next check if there are if a user in the new calls is blocked
+    // Next check if there are if a user in the new calls is blocked.
+    // When wait times are adapted we wait also for the blocked calls,
+    // as the new calls may unblock them.
+    boolean adaptive = Config.getTestAdaptiveWaitTime();
+    int maxWaitTime = 0;
     Set<Object> blockedUsers = new HashSet<>();
     for (Call<?> call : t.getBlockedCalls()) {
       Object user = call.getUser();
       if (user != null) blockedUsers.add(user);
+      if (adaptive) maxWaitTime = Math.max(maxWaitTime, call.blockingWaitTime());
     }
     for (Call<?> call : calls) {
       Object user = call.getUser();
@@ -69,58 +118,226 @@ public class Execute {
       }
     }
 
-    int maxWaitTime = 0;
-
     for (Call<?> call : calls) {
-      maxWaitTime = Math.max(maxWaitTime, call.getWaitTime());
+      maxWaitTime = Math.max(maxWaitTime, call.blockingWaitTime());
       call.setExecute(this);
     }
 
-    t.prepareToRun(this);
+    // Start each call at most once, also if other threads (e.g., alternatives
+    // checked in parallel) try to execute the same calls
+    for (int i = 0; i < calls.size(); i++) {
+      if (!calls.get(i).claimStart()) {
+        for (int j = 0; j < i; j++) calls.get(j).releaseStart();
+        UnitTest.failTestSyntax
+          ("Call "+calls.get(i)+" has already run; it cannot be re-run",
+           UnitTest.ErrorLocation.AFTER);
+      }
+    }
+
+    index = t.prepareToRun(this);
+    EventLog log = t.getEventLog();
+    if (log != null) log.append(EventLog.EXECUTE_BEGIN, index);
+    startTime = System.nanoTime();
     runCalls();
 
-    // Busywait a while until either we wait the maxWaitTime, or all active
-    // calls have been unblocked
-    long remainingTime = maxWaitTime;
-    do {
-      long waitTime = Math.min(remainingTime, 50);
-      try { Thread.sleep(waitTime); }
-      catch (InterruptedException exc) {
-        // best effort
+    // Wait until either we waited maxWaitTime, or all active
+    // calls have been unblocked. Terminating calls wake us up, so
+    // we only wait for calls that are truly blocked.
+    // The wait never exceeds the time budget of the test, and ends early
+    // if quiescence detection finds that the running calls are all waiting.
+    QuiescenceDetector detector =
+      Config.getTestQuiescenceDetection() ? new QuiescenceDetector(Config.getQuiescenceInterval() * 1000000L) : null;
+    awaitCalls(maxWaitTime, detector, log);
+
+    // Calls which have not started (as the executor has not provided threads for them)
+    // are not blocked, so they are waited for again once they start
+    List<Call<?>> notStarted = new ArrayList<>();
+    boolean startedLate = false;
+    long startTimeout = Math.max(maxWaitTime, Config.getTestWaitTime()) * 1000000L;
+    for (Call<?> call : calls) {
+      if (t.getBlockedCalls().contains(call) && !call.hasStartedRunning()) {
+        if (call.awaitStart(startTimeout)) startedLate = true;
+        else notStarted.add(call);
       }
-      // Compute unblocked (and change blockedCalls)
-      t.calculateUnblocked();
-      remainingTime -= waitTime;
-    } while (!t.getBlockedCalls().isEmpty() && remainingTime > 0);
+    }
+    if (startedLate) awaitCalls(maxWaitTime, detector, log);
 
     t.afterRun(this);
 
     unblockedCalls = t.getLastUnblockedCalls();
-    blockedCalls = new HashSet<>(t.getBlockedCalls());
+    for (Call<?> call : unblockedCalls) unblockedIds.set(call.getId());
+    blockedCalls = t.snapshotBlockedCalls(this);
+
+    if (log != null) {
+      for (Call<?> call : unblockedCalls) log.append(EventLog.UNBLOCKED, call.getId());
+      log.append(EventLog.EXECUTE_END, index);
+    }
+    Replay replay = t.getReplay();
+    if (replay != null) replay.checkUnblocked(this);
+    checkTimeBudget();
+    if (!notStarted.isEmpty())
+      UnitTest.failTestSyntax
+        ("calls "+Call.printCalls(notStarted)+" did not start within the wait time; "+
+         "the executor of the test does not provide enough threads", UnitTest.ErrorLocation.LASTLINE);
+  }
+
+  // Waits at most maxWaitTime milliseconds (and never beyond the time budget
+  // of the test) until the blocked calls of the test have been unblocked
+  private void awaitCalls(int maxWaitTime, QuiescenceDetector detector, EventLog log) {
+    long deadline = System.nanoTime() + maxWaitTime * 1000000L;
+    long budget = Config.getTestTimeBudget();
+    if (budget > 0) deadline = Math.min(deadline, t.getStartTime() + budget * 1000000L);
+    t.calculateUnblocked();
+    while (!t.getBlockedCalls().isEmpty()) {
+      long remainingTime = deadline - System.nanoTime();
+      if (remainingTime <= 0) break;
+      if (detector != null) remainingTime = Math.min(remainingTime, detector.samplePeriod());
+      // Compute unblocked (and change blockedCalls)
+      t.awaitUnblocked(remainingTime);
+      pollTicks++;
+      if (log != null) log.append(EventLog.POLL_TICK, index);
+      if (detector != null && !t.getBlockedCalls().isEmpty()
+          && detector.isQuiescent(t.getBlockedCalls(), System.nanoTime()))
+        break;
+    }
+  }
+
+  private void checkTimeBudget() {
+    int budget = Config.getTestTimeBudget();
+    if (budget > 0 && System.nanoTime() - t.getStartTime() > budget * 1000000L)
+      UnitTest.failTest(Texts.format(Message.TIME_BUDGET_EXCEEDED, budget), true, UnitTest.ErrorLocation.LASTLINE);
   }
 
   void runCalls() {
     boolean randomize = Config.getTestRandomize();
+    Replay replay = t.getReplay();
+    EventLog log = t.getEventLog();
     List<Call<?>> callsInOrder = calls;
 
-    // Check if the starting order of calls should be randomized
-    if (randomize) {
-      callsInOrder = new ArrayList<>();
-      ArrayList<Call<?>> copiedCalls = new ArrayList<>(calls);
-      int remaining = copiedCalls.size();
-      while (remaining > 0) {
-        int nextToTake = rand.nextInt(remaining);
-        callsInOrder.add(copiedCalls.get(nextToTake));
-        copiedCalls.remove(nextToTake);
-        --remaining;
+    // Check if the starting order of calls is replayed or should be randomized
+    if (replay != null) {
+      callsInOrder = replay.startOrder(this);
+    } else if (randomize) {
+      // Shuffle a single copy, in linear time, as calls keeps the order of the execute
+      callsInOrder = new ArrayList<>(calls);
+      Collections.shuffle(callsInOrder, Config.getTestRandom());
+    }
+
+    if (callsInOrder.size() == 1) {
+      for (Call<?> call : callsInOrder) {
+        if (log != null) log.append(EventLog.CALL_START, call.getId());
+        call.makeCall();
       }
+      return;
     }
 
-    for (Call<?> call : callsInOrder) {
-      call.makeCall();
+    // Start the calls, which wait at the gate, and open the gate when all
+    // of them are waiting (or after the wait time, if the executor does not
+    // provide threads for all of them)
+    CountDownLatch arrived = new CountDownLatch(callsInOrder.size());
+    CountDownLatch gate = new CountDownLatch(1);
+    try {
+      for (Call<?> call : callsInOrder) {
+        if (log != null) log.append(EventLog.CALL_START, call.getId());
+        call.setGate(arrived, gate);
+        call.makeCall();
+      }
+      try {
+        arrived.await(Config.getTestWaitTime(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+      }
+    } finally {
+      gate.countDown();
     }
   }
 
+  // Appends the trace of the execute, i.e., its calls and the calls it unblocked.
+  // The rendered trace is cached as it does not change once the execute has run.
+  void appendTrace(Appendable out) throws IOException {
+    Locale locale = Texts.getLocale();
+    if (trace == null || (records == null && !Objects.equals(locale, traceLocale))) {
+      trace = renderTrace();
+      traceLocale = locale;
+    }
+    out.append(trace);
+  }
+
+  private String renderTrace() {
+    StringBuilder result = new StringBuilder();
+    boolean parallel = calls.size() > 1;
+    if (parallel)
+      result.append("===  ").append(Texts.getText("calls_executed_in_parallel")).append(": \n");
+    boolean first = true;
+    for (Call<?> call : calls) {
+      if (!first) result.append("\n");
+      if (parallel) result.append("  ");
+      result.append(call.printCall());
+      first = false;
+    }
+    if (parallel) result.append("\n ");
+    first = true;
+    for (Call<?> unblockedCall : unblockedCalls) {
+      if (first) result.append(" --> ").append(Texts.getText("unblocked_singular","S"));
+      else result.append(", ");
+      result.append(unblockedCall.printCallWithReturn());
+      first = false;
+    }
+    return result.append("\n").toString();
+  }
+
+  // Notes that a call of the execute is settled; when all calls are settled the execute
+  // is compacted, keeping its trace (in the current locale) and summaries of its calls
+  void callSettled() {
+    if (records != null || ++settled < calls.size()) return;
+    if (trace == null) {
+      trace = renderTrace();
+      traceLocale = Texts.getLocale();
+    }
+    List<CallRecord> compacted = new ArrayList<>(calls.size());
+    for (Call<?> call : calls) compacted.add(call.record());
+    records = compacted;
+    calls = Collections.emptyList();
+    unblockedCalls = Collections.emptySet();
+    unblockedIds = new BitSet();
+    blockedCalls = Collections.emptySet();
+  }
+
+  // Returns the number of calls of the execute (also when compacted)
+  int size() {
+    return records != null ? records.size() : calls.size();
+  }
+
+  /**
+   * Returns the number of times the execution woke up to check for unblocked calls
+   * before all calls were unblocked or the wait time expired.
+   */
+  public int getPollTicks() {
+    return pollTicks;
+  }
+
+  /**
+   * Returns the metrics of the calls of the execution.
+   */
+  public List<CallMetrics> getCallMetrics() {
+    List<CallMetrics> metrics = new ArrayList<>();
+    if (records != null) {
+      for (CallRecord record : records) metrics.add(record.getMetrics());
+    } else {
+      for (Call<?> call : calls) metrics.add(call.metrics());
+    }
+    return metrics;
+  }
+
+  // The position of the execute among the executes of its test (starting from 1)
+  int getIndex() {
+    return index;
+  }
+
+  long getStartTime() {
+    return startTime;
+  }
+
   /**
    * Returns the set of calls unblocked by the execution of the calls
    * provided as parameter to the exec method. Such an unblocked call
@@ -131,6 +348,11 @@ public class Execute {
     return unblockedCalls;
   }
 
+  // Returns the identifiers of the unblocked calls (not to be modified)
+  BitSet getUnblockedIds() {
+    return unblockedIds;
+  }
+
   /**
    * Returns the set of calls which were started by calling
    * the exec method, but did not unblock.
@@ -140,13 +362,22 @@ public class Execute {
   }
 
   /**
-   * Returns the set of calls provided as arguments to the exec method.
+   * Returns the set of calls provided as arguments to the exec method
+   * (empty if the execution has been compacted, see Config.setCompactCalls).
    */
   public List<Call<?>> getCalls() {
     return calls;
   }
   
   public String toString() {
+    if (records != null) {
+      StringBuilder result = new StringBuilder();
+      for (CallRecord record : records) {
+        if (result.length() > 0) result.append("\n  ");
+        result.append(record.printCall());
+      }
+      return result.toString();
+    }
     return Call.printCalls(calls);
   }
 }
@@ -0,0 +1,104 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Explores different interleavings of a sequence of calls, by running the sequence
+ * many times, each time with a different (seeded) random starting order
+ * of the calls executed in parallel.
+ */
+public class Explore {
+
+  /**
+   * Runs sequence schedules times, each run in a new unit test in which the starting
+   * order of parallel calls is randomized using a seed derived from seed.
+   * Runs execute in parallel on the available processors. When a run fails
+   * the later runs are skipped, and the current test fails reporting the first failed
+   * run and the seed which reproduces it (see {@link Config#setTestSeed(long)}).
+   * Note that sequence must create its own instances of the tested objects,
+   * as runs execute in parallel.
+   */
+  public static void schedules(int schedules, long seed, Runnable sequence) {
+    UnitTest test = UnitTest.getCurrentTest();
+    Config config = Config.current();
+    Random seeds = new Random(seed);
+    // The failures of the schedules, and the first schedule that failed; schedules after
+    // a failed schedule are skipped, so the reported failure does not depend on timing
+    String[] failures = new String[schedules+1];
+    long[] scheduleSeeds = new long[schedules+1];
+    AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+    int parallelism = Math.min(schedules, Runtime.getRuntime().availableProcessors());
+    ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, parallelism), command -> {
+      Thread thread = new Thread(command, "sequenceTester-explore");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    for (int i = 1; i <= schedules; i++) {
+      int schedule = i;
+      long scheduleSeed = seeds.nextLong();
+      workers.execute(() -> {
+        if (schedule < firstFailure.get()) {
+          String msg = runSchedule(test.getTestName()+" [schedule "+schedule+"]", config, scheduleSeed, sequence);
+          if (msg != null) {
+            failures[schedule] = msg;
+            scheduleSeeds[schedule] = scheduleSeed;
+            firstFailure.accumulateAndGet(schedule, Math::min);
+          }
+        }
+      });
+    }
+
+    workers.shutdown();
+    boolean interrupted = false;
+    while (!workers.isTerminated()) {
+      try { workers.awaitTermination(1, TimeUnit.DAYS); }
+      catch (InterruptedException exc) { interrupted = true; }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+
+    // The executor service terminated, so the failures of the workers are visible
+    int failed = firstFailure.get();
+    if (failed != Integer.MAX_VALUE)
+      UnitTest.failTest(Texts.format(Message.SCHEDULE_FAILED, failed, scheduleSeeds[failed], failures[failed]));
+    else if (interrupted)
+      UnitTest.failTest(Texts.format(Message.SCHEDULES_INTERRUPTED));
+  }
+
+  /**
+   * Runs sequence schedules times, with a random seed, as described in
+   * {@link #schedules(int, long, Runnable)}.
+   */
+  public static void schedules(int schedules, Runnable sequence) {
+    schedules(schedules, new Random().nextLong(), sequence);
+  }
+
+  // Runs the sequence in a new unit test, returning a description of the
+  // failure if the run failed and null otherwise
+  private static String runSchedule(String name, Config config, long seed, Runnable sequence) {
+    UnitTest test = new UnitTest(name);
+    Config scheduleConfig = config.copy();
+    Config.installTestConfig(scheduleConfig);
+    Config.setTestRandomize(true);
+    Config.setTestSeed(seed);
+    try {
+      sequence.run();
+      test.finish(false);
+      return null;
+    } catch (Throwable exc) {
+      // A failed finish has already removed the test from the thread
+      UnitTest.setCurrentTest(test);
+      Config.installTestConfig(scheduleConfig);
+      String msg = exc.getMessage();
+      if (msg == null) msg = exc.toString();
+      return msg+"\n\n"+UnitTest.errorTrace(UnitTest.ErrorLocation.LASTLINE);
+    } finally {
+      UnitTest.setCurrentTest(null);
+      Config.installTestConfig(null);
+    }
+  }
+}
@@ -21,6 +21,7 @@ public class HandleExceptions implements TestExecutionExceptionHandler {
         msg = "\n\n"+msg;
       msg += "\n" + UnitTest.errorTrace(UnitTest.ErrorLocation.LASTLINE);
       // System.out.println(msg);
+      UnitTest.getCurrentTest().setFailure(msg);
       org.opentest4j.AssertionFailedError newThrowable = new org.opentest4j.AssertionFailedError(msg);
       newThrowable.setStackTrace(throwable.getStackTrace());
       throw newThrowable;
@@ -31,9 +32,13 @@ public class HandleExceptions implements TestExecutionExceptionHandler {
       if (loc == null) loc = UnitTest.ErrorLocation.LASTLINE;
       msg += "\n" + UnitTest.errorTrace(loc);
       // System.out.println(msg);
+      UnitTest.getCurrentTest().setFailure(msg);
       org.opentest4j.AssertionFailedError newThrowable = new org.opentest4j.AssertionFailedError(msg);
       newThrowable.setStackTrace(throwable.getStackTrace());
       throw newThrowable;
-    } else throw throwable;
+    } else {
+      UnitTest.getCurrentTest().setFailure(throwable.toString());
+      throw throwable;
+    }
   }
 }
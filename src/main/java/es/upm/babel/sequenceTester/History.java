@@ -0,0 +1,90 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable sequence of executes, i.e., the execution history of a test.
+ * Appending an execute shares the existing history, so saving a history
+ * (e.g., before trying an alternative) and restoring it takes constant time.
+ * Histories extending each other share a growable array of executes, of which
+ * each history is a prefix; appending to a history which has already been
+ * extended (e.g., by an earlier alternative) copies its executes.
+ */
+final class History {
+  static final History EMPTY = new History(null, new Execute[0], 0);
+
+  // The executes shared by the histories extending each other, of which
+  // the first size are set; set executes never change
+  private static final class Store {
+    private Execute[] executes;
+    private int size;
+
+    Store(Execute[] executes, int size) {
+      this.executes = executes;
+      this.size = size;
+    }
+  }
+
+  // The store extended by appending to the history (null for the empty history,
+  // which is shared by all tests), and the executes of the store when the
+  // history was created, of which the history is a prefix
+  private final Store store;
+  private final Execute[] executes;
+  private final int size;
+
+  private History(Store store, Execute[] executes, int size) {
+    this.store = store;
+    this.executes = executes;
+    this.size = size;
+  }
+
+  static History of(List<Execute> executes) {
+    History history = EMPTY;
+    for (Execute e : executes) history = history.append(e);
+    return history;
+  }
+
+  History append(Execute e) {
+    if (store != null) {
+      synchronized (store) {
+        if (store.size == size) return extend(store, e);
+      }
+    }
+    // The history is empty or has been extended by other executes, so its executes are copied
+    Store copy = new Store(Arrays.copyOf(executes, Math.max(16, 2 * size)), size);
+    synchronized (copy) {
+      return extend(copy, e);
+    }
+  }
+
+  // Appends e to the history at the end of store (holding the lock of store)
+  private static History extend(Store store, Execute e) {
+    if (store.size == store.executes.length)
+      store.executes = Arrays.copyOf(store.executes, 2 * store.size);
+    store.executes[store.size++] = e;
+    return new History(store, store.executes, store.size);
+  }
+
+  int size() {
+    return size;
+  }
+
+  Execute get(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("index "+index+" of a history of size "+size);
+    return executes[index];
+  }
+
+  // Returns the executes from position from (inclusive) to position to (exclusive)
+  Execute[] range(int from, int to) {
+    if (from < 0 || to > size || from > to)
+      throw new IndexOutOfBoundsException("range "+from+".."+to+" of a history of size "+size);
+    return Arrays.copyOfRange(executes, from, to);
+  }
+
+  List<Execute> asList() {
+    return Collections.unmodifiableList(Arrays.asList(executes).subList(0, size));
+  }
+}
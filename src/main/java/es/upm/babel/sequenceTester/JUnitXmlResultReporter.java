@@ -0,0 +1,72 @@
+package es.upm.babel.sequenceTester;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes test results to a file in the JUnit XML format. As results are written
+ * as tests finish, every test is written as a test suite with a single test case,
+ * so that the counts of each suite are known when it is written.
+ * The file is complete when the reporter is closed.
+ */
+public class JUnitXmlResultReporter implements ResultReporter {
+  private final BufferedWriter out;
+
+  public JUnitXmlResultReporter(Path path) throws IOException {
+    out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuites>\n");
+  }
+
+  public synchronized void report(TestResult result) throws IOException {
+    String time = Double.toString(result.getWallTime()/1000000000.0);
+    int failures = result.isSuccessful() ? 0 : 1;
+    out.write("  <testsuite name=\""+escape(result.getName())+"\" tests=\"1\" failures=\""+failures+
+              "\" errors=\"0\" skipped=\"0\" time=\""+time+"\">\n");
+    out.write("    <properties>\n");
+    if (result.getConfigurationDescription() != null)
+      writeProperty("configuration", result.getConfigurationDescription());
+    writeProperty("executes", Integer.toString(result.getExecutes()));
+    writeProperty("calls", Integer.toString(result.getCalls()));
+    out.write("    </properties>\n");
+    out.write("    <testcase name=\""+escape(result.getName())+"\" classname=\""+escape(result.getName())+
+              "\" time=\""+time+"\"");
+    if (result.isSuccessful()) {
+      out.write("/>\n");
+    } else {
+      String failure = result.getFailure() == null ? "" : result.getFailure();
+      out.write(">\n      <failure message=\""+escape(failure.trim().split("\n",2)[0])+"\">");
+      out.write(escape(failure));
+      out.write("</failure>\n    </testcase>\n");
+    }
+    out.write("  </testsuite>\n");
+    out.flush();
+  }
+
+  private void writeProperty(String name, String value) throws IOException {
+    out.write("      <property name=\""+name+"\" value=\""+escape(value)+"\"/>\n");
+  }
+
+  private static String escape(String s) {
+    StringBuilder escaped = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+      case '<': escaped.append("&lt;"); break;
+      case '>': escaped.append("&gt;"); break;
+      case '&': escaped.append("&amp;"); break;
+      case '"': escaped.append("&quot;"); break;
+      default:
+        if (c >= 0x20 || c == '\n' || c == '\r' || c == '\t') escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  public synchronized void close() throws IOException {
+    out.write("</testsuites>\n");
+    out.close();
+  }
+}
@@ -0,0 +1,62 @@
+package es.upm.babel.sequenceTester;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes test results to a file in the JSON Lines format, i.e., one JSON object per
+ * test with the fields name, configuration, outcome ("success" or "failure"),
+ * executes, calls, wallTimeMillis and failure. Results are written as tests finish.
+ */
+public class JsonLinesResultReporter implements ResultReporter {
+  private final BufferedWriter out;
+
+  public JsonLinesResultReporter(Path path) throws IOException {
+    out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+  }
+
+  public synchronized void report(TestResult result) throws IOException {
+    out.write("{\"name\":");
+    writeString(result.getName());
+    out.write(",\"configuration\":");
+    writeString(result.getConfigurationDescription());
+    out.write(",\"outcome\":");
+    writeString(result.isSuccessful() ? "success" : "failure");
+    out.write(",\"executes\":"+result.getExecutes());
+    out.write(",\"calls\":"+result.getCalls());
+    out.write(",\"wallTimeMillis\":"+result.getWallTime()/1000000.0);
+    out.write(",\"failure\":");
+    writeString(result.getFailure());
+    out.write("}\n");
+    out.flush();
+  }
+
+  private void writeString(String s) throws IOException {
+    if (s == null) {
+      out.write("null");
+      return;
+    }
+    out.write('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+      case '"': out.write("\\\""); break;
+      case '\\': out.write("\\\\"); break;
+      case '\n': out.write("\\n"); break;
+      case '\r': out.write("\\r"); break;
+      case '\t': out.write("\\t"); break;
+      default:
+        if (c < 0x20) out.write(String.format("\\u%04x", (int) c));
+        else out.write(c);
+      }
+    }
+    out.write('"');
+  }
+
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+}
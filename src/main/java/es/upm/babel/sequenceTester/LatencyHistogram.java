@@ -0,0 +1,91 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies. Latencies are recorded with microsecond
+ * resolution in logarithmic buckets, each bucket having a relative precision of 1/8,
+ * so recording a latency and computing a percentile use constant space and time.
+ * The library keeps a histogram of the latencies of the calls of each class
+ * (see {@link UnitTest#getCallLatencies()}).
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+
+  /**
+   * Records a latency (in nanoseconds).
+   */
+  void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value / 1000));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long currentMax;
+    while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) { }
+  }
+
+  /**
+   * Returns the number of recorded latencies.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Returns the maximum recorded latency (in nanoseconds).
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the mean recorded latency (in nanoseconds), or 0 if none was recorded.
+   */
+  public long getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : sum.get() / n;
+  }
+
+  /**
+   * Returns an upper bound (in nanoseconds) of the latencies below the percentile
+   * (a number between 0 and 1).
+   */
+  public long getValueAtPercentile(double percentile) {
+    long target = (long) Math.ceil(percentile * count.get());
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target && seen > 0)
+        return Math.min(max.get(), (upperBound(i) + 1) * 1000 - 1);
+    }
+    return max.get();
+  }
+
+  public String toString() {
+    return "count="+getCount()+" mean="+getMean()/1000+"us p50="+getValueAtPercentile(0.5)/1000+
+      "us p99="+getValueAtPercentile(0.99)/1000+"us max="+getMax()/1000+"us";
+  }
+
+  private static int index(long micros) {
+    if (micros < SUB_BUCKETS) return (int) micros;
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+    int subBucket = (int) (micros >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  // The largest value (in microseconds) recorded in bucket i
+  private static long upperBound(int i) {
+    if (i < SUB_BUCKETS) return i;
+    int shift = i / SUB_BUCKETS - 1;
+    long subBucket = i % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,55 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.function.Supplier;
+
+import org.opentest4j.AssertionFailedError;
+
+/**
+ * An assertion failure whose message is built only when it is first requested,
+ * e.g., when the failure is reported, but not when the failure is caught
+ * (as when checking alternatives).
+ */
+final class LazyAssertionFailedError extends AssertionFailedError {
+  private static final long serialVersionUID = 1L;
+  private transient Supplier<String> messageSupplier;
+  // The configuration of the failed test, e.g., the locale of the message,
+  // as the message may be built by another thread
+  private transient Config config;
+  private volatile String message = null;
+
+  LazyAssertionFailedError(Supplier<String> messageSupplier) {
+    this.messageSupplier = messageSupplier;
+    this.config = Config.current();
+  }
+
+  @Override
+  public String getMessage() {
+    String result = message;
+    if (result == null) {
+      synchronized (this) {
+        if (message == null) {
+          message = messageSupplier == null ? "" : buildMessage();
+          messageSupplier = null;
+          config = null;
+        }
+        result = message;
+      }
+    }
+    return result;
+  }
+
+  private String buildMessage() {
+    Config previous = Config.current();
+    Config.installTestConfig(config);
+    try {
+      return messageSupplier.get();
+    } catch (RuntimeException exc) {
+      // An error describing the failure (e.g., a wrong number of arguments to
+      // Texts.format) must not hide the failure itself when it is reported
+      addSuppressed(exc);
+      return "*** WARNING. Inform teachers: the message of the failure could not be built: "+exc;
+    } finally {
+      Config.installTestConfig(previous);
+    }
+  }
+}
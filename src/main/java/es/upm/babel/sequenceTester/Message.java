@@ -0,0 +1,140 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Templates of the messages of the library, composed of texts (keys of the
+ * text bundles, with a format, see {@link Texts}), literal strings and arguments.
+ * The text of a template is resolved once per locale (see Config.setTestLocale),
+ * so formatting a message only inserts its arguments.
+ */
+enum Message {
+  // call, exception, stack trace
+  CALL_RAISED_AN_EXCEPTION(text("the_call_to","S"), arg(), text("raised_an_exception","SP"), arg(),
+                           literal("\nStacktrace:\n"), arg(), literal("\n")),
+  // call, exception
+  CALL_RAISED(arg(), text("raised","SP"), arg()),
+  // call, value
+  CALL_RETURNED(arg(), text("returned","SP"), arg()),
+  // call
+  DID_NOT_RETURN_A_VALUE(text("the_call","S"), arg(), text("did_not","SP"), text("return_a_value")),
+  // call
+  DID_NOT_RAISE_AN_EXCEPTION(text("the_call","S"), arg(), text("did_not","SP"), text("raise_an_exception")),
+  // call
+  IS_NOT_BLOCKED(text("the_call","S"), arg(), text("is_not_blocked","P")),
+  // call
+  IS_STILL_BLOCKED(text("the_call","S"), arg(), text("is_still_blocked","P")),
+  // call
+  SHOULD_HAVE_RETURNED_BUT_IS_STILL_BLOCKED(text("the_call","S"), arg(), text("should_have_returned","SP"),
+                                            text("but","S"), text("is_still_blocked")),
+  // call, exception
+  SHOULD_HAVE_RETURNED_BUT_RAISED(text("the_call","S"), arg(), text("should_have_returned","SP"),
+                                  text("but","S"), text("raised_an_exception","S"), arg()),
+  // call, expected value, returned value
+  SHOULD_HAVE_RETURNED_VALUE(text("the_call","S"), arg(), text("should_have_returned","SP"), text("the_value","S"),
+                             arg(), text("but","SP"), text("returned","S"), arg()),
+  // call, expected value, returned value
+  SHOULD_HAVE_RETURNED_THE_VALUE(text("the_call","S"), arg(), text("should_have_returned_the_value","S"),
+                                 arg(), text("but","SP"), text("returned","S"), arg()),
+  // call, expected exception class, raised exception class
+  SHOULD_HAVE_RAISED_THE_EXCEPTION(text("the_call","S"), arg(), text("should_have","SP"),
+                                   text("raised_the_exception","S"), arg(), text("but","SP"),
+                                   text("raised_the_exception","S"), arg()),
+  // calls
+  WERE_NOT_UNBLOCKED(text("the_calls","S"), arg(), text("were_not","PS"), text("unblocked_plural","S"),
+                     text("although_they_should_have_been","S"), literal("\n")),
+  // call, exception, stack trace
+  SHOULD_BLOCK_BUT_RAISED(text("the_call","S"), arg(), text("should_block_singular","P"), literal("\n"),
+                          text("but","S"), text("raised_the_exception","S"), arg(),
+                          literal("\n\nStacktrace:\n"), arg(), literal("\n")),
+  // call, description of the return
+  SHOULD_BLOCK(text("the_call","S"), arg(), text("should_block_singular","P"), literal(" "), arg(), literal("\n")),
+  // call, calls, description of the return
+  SHOULD_STILL_BE_BLOCKED(text("the_call","S"), arg(), text("should_still_be_blocked_singular","SP"),
+                          text("after","S"), text("the_calls","S"), arg(), literal(" "), arg(), literal("\n")),
+  // calls, step
+  NOT_EXECUTED_IN_RECORDED_STEP(text("the_calls","S"), arg(), text("were_not","PS"), text("executed_in_step","S"), arg(),
+                                text("of_the_recorded_schedule","P")),
+  // step, recorded unblocked calls, unblocked calls
+  REPLAY_DIVERGED(text("the_replay_diverged_in_step","S"), arg(), literal(": "), text("the_calls","S"), arg(),
+                  text("were_unblocked_when_recorded","P"), literal(", "), text("but","S"), text("the_calls","S"),
+                  arg(), text("were_unblocked","P")),
+  // schedule, seed, failure of the schedule
+  SCHEDULE_FAILED(text("the_schedule","S"), arg(), text("with_the_seed","PS"), arg(), text("failed_singular","P"),
+                  literal(":\n"), arg()),
+  SCHEDULES_INTERRUPTED(text("the_exploration_of_the_schedules_was_interrupted")),
+  // time budget (in milliseconds)
+  TIME_BUDGET_EXCEEDED(text("the_test_exceeded_its_time_budget_of","S"), arg(), literal(" ms")),
+  // value
+  BUT_RETURNED_THE_VALUE(text("but","S"), text("returned_the_value","S"), arg()),
+  BUT_TERMINATED_NORMALLY(text("but","S"), text("terminated_normally"));
+
+  // A part of a template: a text, a literal string or an argument
+  private static final class Part {
+    final String key;
+    final String format;
+    final String literal;
+
+    Part(String key, String format, String literal) {
+      this.key = key;
+      this.format = format;
+      this.literal = literal;
+    }
+  }
+
+  // Holds the argument placeholder, as the constants of an enum cannot
+  // refer to the static fields of the enum
+  private static final class Placeholder {
+    static final Part ARG = new Part(null, null, null);
+  }
+
+  private final Part[] parts;
+
+  Message(Part... parts) {
+    this.parts = parts;
+  }
+
+  private static Part arg() {
+    return Placeholder.ARG;
+  }
+
+  private static Part text(String key, String format) {
+    return new Part(key, format, null);
+  }
+
+  private static Part text(String key) {
+    return new Part(key, "", null);
+  }
+
+  private static Part literal(String literal) {
+    return new Part(null, null, literal);
+  }
+
+  // Returns the keys of the texts of the template
+  List<String> keys() {
+    List<String> keys = new ArrayList<>();
+    for (Part part : parts) {
+      if (part.key != null) keys.add(part.key);
+    }
+    return keys;
+  }
+
+  // Returns the text between the arguments of the template, resolved in table
+  String[] segments(Texts.Table table) {
+    List<String> segments = new ArrayList<>();
+    StringBuilder segment = new StringBuilder();
+    for (Part part : parts) {
+      if (part == Placeholder.ARG) {
+        segments.add(segment.toString());
+        segment.setLength(0);
+      } else if (part.literal != null) {
+        segment.append(part.literal);
+      } else {
+        segment.append(table.getText(part.key, part.format));
+      }
+    }
+    segments.add(segment.toString());
+    return segments.toArray(new String[0]);
+  }
+}
@@ -0,0 +1,31 @@
+package es.upm.babel.sequenceTester;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * State of the library kept separately for every class loader, e.g., for the
+ * submissions tested by a {@link BatchRunner}, which load the same (named) classes
+ * in different class loaders. Class loaders are referenced weakly, so the
+ * state does not keep the classes of a finished submission reachable; the state
+ * must therefore not refer to classes (or instances) of the class loader itself.
+ */
+final class PerClassLoader<T> {
+  private final Map<ClassLoader,T> states = new WeakHashMap<>();
+  private final Supplier<T> initialState;
+
+  PerClassLoader(Supplier<T> initialState) {
+    this.initialState = initialState;
+  }
+
+  // Returns the state of loader, creating it if needed
+  synchronized T get(ClassLoader loader) {
+    return states.computeIfAbsent(loader, l -> initialState.get());
+  }
+
+  // Returns the state of the context class loader of the calling thread
+  T get() {
+    return get(Thread.currentThread().getContextClassLoader());
+  }
+}
@@ -0,0 +1,76 @@
+package es.upm.babel.sequenceTester;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Decides that the running calls of an execute are blocked before the wait time
+ * has passed, by sampling the states of the threads running them (see
+ * Config.setQuiescenceDetection). The calls are quiescent when the threads of all
+ * of them have been WAITING or BLOCKED, on the same lock and without waking up,
+ * during a stable interval. A thread sleeping or waiting with a timeout
+ * (TIMED_WAITING) may make progress by itself, so it is never quiescent;
+ * neither is a thread which the ThreadMXBean does not report (e.g., a virtual
+ * thread), for which the full wait time is used. Threads which do not run calls
+ * are not sampled, so a wake-up coming from them is not anticipated.
+ */
+final class QuiescenceDetector {
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  private final long interval;
+  // The threads of the last sample, and the state, lock and
+  // wake-up counts of each of them
+  private long[] threadIds = new long[0];
+  private String[] states = new String[0];
+  // When (System.nanoTime) the current sample was first observed
+  private long stableSince;
+
+  QuiescenceDetector(long intervalNanos) {
+    this.interval = intervalNanos;
+  }
+
+  // How long (in nanoseconds) to wait between samples
+  long samplePeriod() {
+    return Math.max(interval / 4, 1000000L);
+  }
+
+  // Samples the threads of calls, returning true if they have not changed
+  // (and all wait) during the interval
+  boolean isQuiescent(Collection<Call<?>> calls, long now) {
+    long[] ids = new long[calls.size()];
+    int i = 0;
+    for (Call<?> call : calls) {
+      // The call has not yet started, or has just terminated
+      Thread thread = call.getThread();
+      if (thread == null) return reset();
+      ids[i++] = thread.getId();
+    }
+
+    ThreadInfo[] infos = threads.getThreadInfo(ids);
+    String[] sample = new String[infos.length];
+    for (i = 0; i < infos.length; i++) {
+      ThreadInfo info = infos[i];
+      if (info == null) return reset();
+      Thread.State state = info.getThreadState();
+      if (state != Thread.State.WAITING && state != Thread.State.BLOCKED) return reset();
+      sample[i] = state+" "+info.getLockName()+" "+info.getBlockedCount()+" "+info.getWaitedCount();
+    }
+
+    if (!Arrays.equals(ids, threadIds) || !Arrays.equals(sample, states)) {
+      threadIds = ids;
+      states = sample;
+      stableSince = now;
+      return false;
+    }
+    return now - stableSince >= interval;
+  }
+
+  private boolean reset() {
+    threadIds = new long[0];
+    states = new String[0];
+    return false;
+  }
+}
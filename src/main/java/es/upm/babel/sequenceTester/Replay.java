@@ -0,0 +1,76 @@
+package es.upm.babel.sequenceTester;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The schedule of a test read from an {@link EventLog}: for every execute the order
+ * in which its calls were started, and the calls it unblocked. Replaying a test
+ * starts calls in the recorded order, and checks that each execute unblocks
+ * the same calls as when recorded.
+ */
+final class Replay {
+  private final Map<Integer,List<Integer>> startOrders = new HashMap<>();
+  private final Map<Integer,Set<Integer>> unblocked = new HashMap<>();
+
+  Replay(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (log.limit() < EventLog.HEADER_SIZE || log.getInt(0) != EventLog.MAGIC || log.getInt(4) != EventLog.VERSION)
+        throw new IOException(path+" is not an event log");
+      long records = log.getLong(8);
+      int execute = 0;
+      for (long i = 0; i < records; i++) {
+        int position = (int) (EventLog.HEADER_SIZE + i * EventLog.RECORD_SIZE);
+        byte type = log.get(position);
+        int value = log.getInt(position + 4);
+        if (type == EventLog.EXECUTE_BEGIN) {
+          execute = value;
+          startOrders.put(execute, new ArrayList<>());
+          unblocked.put(execute, new TreeSet<>());
+        } else if (type == EventLog.CALL_START) {
+          startOrders.get(execute).add(value);
+        } else if (type == EventLog.UNBLOCKED) {
+          unblocked.get(execute).add(value);
+        }
+      }
+    }
+  }
+
+  // Returns the calls of e in the order they were started when recorded
+  List<Call<?>> startOrder(Execute e) {
+    List<Integer> order = startOrders.get(e.getIndex());
+    List<Call<?>> calls = new ArrayList<>();
+    if (order != null) {
+      Map<Integer,Call<?>> callsById = new HashMap<>();
+      for (Call<?> call : e.getCalls()) callsById.put(call.getId(), call);
+      for (int id : order) {
+        Call<?> call = callsById.remove(id);
+        if (call != null) calls.add(call);
+      }
+    }
+    if (calls.size() != e.getCalls().size())
+      UnitTest.failTestSyntax
+        (Texts.format(Message.NOT_EXECUTED_IN_RECORDED_STEP, Call.printCalls(e.getCalls()), e.getIndex()),
+         UnitTest.ErrorLocation.LASTLINE);
+    return calls;
+  }
+
+  // Checks that e unblocked the same calls as when recorded
+  void checkUnblocked(Execute e) {
+    Set<Integer> recorded = unblocked.get(e.getIndex());
+    Set<Integer> actual = new TreeSet<>();
+    for (Call<?> call : e.getUnblockedCalls()) actual.add(call.getId());
+    if (!actual.equals(recorded))
+      UnitTest.failTest(() -> Texts.format(Message.REPLAY_DIVERGED, e.getIndex(), recorded, actual));
+  }
+}
@@ -0,0 +1,21 @@
+package es.upm.babel.sequenceTester;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the result of every test as it finishes (see
+ * {@link UnitTest#addResultReporter(ResultReporter)}). Tests may finish
+ * concurrently, so implementations must be thread-safe.
+ */
+public interface ResultReporter extends Closeable {
+  /**
+   * Reports the result of a finished test.
+   */
+  void report(TestResult result) throws IOException;
+
+  /**
+   * Writes any pending results and releases the resources of the reporter.
+   */
+  default void close() throws IOException { }
+}
@@ -1,6 +1,8 @@
 package es.upm.babel.sequenceTester;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 
 /**
  * Provides convenient test assertions.
@@ -38,7 +40,7 @@ public class SeqAssertions {
   public static <V> void assertEquals(V expected, Call<V> call) {
     V actual = call.getReturnValue();
     if (!expected.equals(actual))
-      UnitTest.failTest(Texts.getText("the_call","S")+call+Texts.getText("should_have_returned_the_value","S")+expected+Texts.getText("but","SP")+Texts.getText("returned","S")+actual); 
+      UnitTest.failTest(() -> Texts.format(Message.SHOULD_HAVE_RETURNED_THE_VALUE, call, expected, actual));
   }
 
   /**
@@ -48,9 +50,7 @@ public class SeqAssertions {
   public static <V> void assertThrown(Class<?> excClass, Call<V> call) {
     Class<?> exceptionClass = call.getExceptionRaised().getClass();
     if (!excClass.isAssignableFrom(exceptionClass)) {
-      UnitTest.failTest(Texts.getText("the_call","S")+call+Texts.getText("should_have","SP")+
-                        Texts.getText("raised_the_exception","S")+excClass+
-                        Texts.getText("but","SP")+Texts.getText("raised_the_exception","S")+exceptionClass);
+      UnitTest.failTest(() -> Texts.format(Message.SHOULD_HAVE_RAISED_THE_EXCEPTION, call, excClass, exceptionClass));
     }
   }
 
@@ -67,7 +67,7 @@ public class SeqAssertions {
    * and that no calls not listed in mustCalls or mayCalls were unblocked.
    */
   public static void assertMustMayUnblocked(Execute e, List<Call<?>> mustCalls, List<Call<?>> mayCalls) {
-    new Unblocks(mustCalls,mayCalls).checkCalls(e);
+    Unblocks.checkCalls(e, mustCalls, mayCalls);
   }
 
   /**
@@ -116,47 +116,119 @@ public class SeqAssertions {
    * Asserts that one of the assertion alternatives in assertions is true.
    */  
   public static int checkAlternatives(Runnable... assertions) {
-    ArrayList<String> alternatives = new ArrayList<>();
+    // The failures of the alternatives, described only if all alternatives fail
+    List<Supplier<String>> alternatives = new ArrayList<>();
     int alternative = 0;
     boolean hasWinningAlternative = false;
-    List<Execute> historyBackup = new ArrayList<>(UnitTest.getCurrentTest().getHistory());
+    UnitTest test = UnitTest.getCurrentTest();
+    History historyBackup = test.history();
     int startSize = historyBackup.size();
 
-    for (Runnable assertion : assertions) {
-      try {
-        List<Execute> history = new ArrayList<>(historyBackup);
-        UnitTest.getCurrentTest().setHistory(history);
-        assertion.run();
-        hasWinningAlternative = true;
-        break;
-      } catch (org.opentest4j.AssertionFailedError exc) {
-        String msg = exc.getMessage();
-        if (startSize < UnitTest.getCurrentTest().getHistory().size())
-          alternatives.add
-            (Texts.getText("alternative_trace","C") + ":\n" + indent(4,UnitTest.mkTrace(startSize)) + "\n  " + msg);
-        else
-          alternatives.add(msg);
+    if (Config.getTestParallelAlternatives())
+      hasWinningAlternative = checkAlternativesInParallel(test, startSize, alternatives, assertions);
+    else {
+      for (Runnable assertion : assertions) {
+        try {
+          test.resetHistory(historyBackup);
+          assertion.run();
+          hasWinningAlternative = true;
+          break;
+        } catch (org.opentest4j.AssertionFailedError exc) {
+          alternatives.add(failedAlternative(test, startSize, exc));
+        }
       }
     }
 
-    UnitTest.getCurrentTest().setHistory(historyBackup);
+    test.resetHistory(historyBackup);
 
     if (!hasWinningAlternative) {
-      StringBuilder msg = new StringBuilder(Texts.getText("all_possible_alternatives_to_explain_the_execution_of","C")+
-                                            "\n"+indent(2,UnitTest.mkTrace(0,startSize-1))+
-                                            Texts.getText("failed") + ":\n\n");
-      for (int i=0; i<alternatives.size(); i++) {
-        if (alternatives.get(i) != null) {
-          msg.append(Texts.getText("alternative", "SC")).append(i + 1).append(":\n  ").append(alternatives.get(i)).append("\n");
-        }
-      }
-      UnitTest.failTest(msg+"\n", true, UnitTest.ErrorLocation.AFTER);
+      int window = Config.getTestTraceWindow();
+      UnitTest.failTest(() -> {
+          StringBuilder msg = new StringBuilder(Texts.getText("all_possible_alternatives_to_explain_the_execution_of","C")+
+                                                "\n"+indent(2,UnitTest.mkTrace(historyBackup,window,0,startSize-1))+
+                                                Texts.getText("failed") + ":\n\n");
+          for (int i=0; i<alternatives.size(); i++) {
+            if (alternatives.get(i) != null) {
+              msg.append(Texts.getText("alternative", "SC")).append(i + 1).append(":\n  ").append(alternatives.get(i).get()).append("\n");
+            }
+          }
+          return msg+"\n";
+        }, true, UnitTest.ErrorLocation.AFTER);
       return -1;
     } else {
       return alternative;
     }
   }
 
+  // Checks the alternatives in parallel, each on a fork of the test, and continues the test
+  // from the first successful alternative (in the order of assertions). The failures of
+  // the alternatives before the successful one are added to alternatives.
+  private static boolean checkAlternativesInParallel(UnitTest test, int startSize, List<Supplier<String>> alternatives,
+                                                     Runnable... assertions) {
+    int numAlternatives = assertions.length;
+    UnitTest[] forks = new UnitTest[numAlternatives];
+    boolean[] failed = new boolean[numAlternatives];
+    List<Supplier<String>> failures = new ArrayList<>(Collections.nCopies(numAlternatives, null));
+    Throwable[] errors = new Throwable[numAlternatives];
+    CountDownLatch done = new CountDownLatch(numAlternatives);
+    Config config = Config.current();
+
+    for (int i = 0; i < numAlternatives; i++) {
+      int index = i;
+      UnitTest fork = test.fork();
+      Config forkConfig = config.copy();
+      forks[i] = fork;
+      Config.getTestExecutor().execute(() -> {
+        UnitTest.setCurrentTest(fork);
+        Config.installTestConfig(forkConfig);
+        try {
+          assertions[index].run();
+        } catch (org.opentest4j.AssertionFailedError exc) {
+          failed[index] = true;
+          failures.set(index, failedAlternative(fork, startSize, exc));
+        } catch (Throwable exc) {
+          errors[index] = exc;
+        } finally {
+          UnitTest.setCurrentTest(null);
+          Config.installTestConfig(null);
+          done.countDown();
+        }
+      });
+    }
+
+    boolean interrupted = false;
+    while (done.getCount() > 0) {
+      try { done.await(); }
+      catch (InterruptedException exc) { interrupted = true; }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+
+    int winner = -1;
+    for (int i = 0; i < numAlternatives && winner < 0; i++) {
+      if (!failed[i] && errors[i] == null) winner = i;
+    }
+    for (int i = 0; i < numAlternatives; i++) {
+      test.join(forks[i], i == winner);
+    }
+    for (int i = 0; i < numAlternatives && i != winner; i++) {
+      if (errors[i] instanceof RuntimeException) throw (RuntimeException) errors[i];
+      if (errors[i] instanceof Error) throw (Error) errors[i];
+      alternatives.add(failures.get(i));
+    }
+    return winner >= 0;
+  }
+
+  // Describes (when needed) why an alternative failed, including the calls it executed
+  private static Supplier<String> failedAlternative(UnitTest test, int startSize, org.opentest4j.AssertionFailedError exc) {
+    History history = test.history();
+    int window = Config.getTestTraceWindow();
+    if (startSize < history.size())
+      return () -> Texts.getText("alternative_trace","C") + ":\n" +
+        indent(4,UnitTest.mkTrace(history,window,startSize,history.size()-1)) + "\n  " + exc.getMessage();
+    else
+      return exc::getMessage;
+  }
+
   static String indent(int n, String src) {
     StringBuilder indentStringBuilder = new StringBuilder();
     for (int i=0; i<n; i++) indentStringBuilder.append(" ");
@@ -0,0 +1,48 @@
+package es.upm.babel.sequenceTester;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * A class loader which loads the classes of a submission (and of the test suites
+ * run against it) itself, before delegating to its parent, so that the classes
+ * of different submissions are isolated from each other. The classes of the
+ * library, JUnit and the JDK are always loaded by the parent, so they are shared
+ * (and warmed up) across submissions.
+ */
+final class SubmissionClassLoader extends URLClassLoader {
+  private static final String[] SHARED_PACKAGES =
+    { "java.", "javax.", "jdk.", "sun.", "com.sun.", "org.junit.", "org.opentest4j.", "org.apiguardian.",
+      "es.upm.babel.sequenceTester." };
+
+  static {
+    ClassLoader.registerAsParallelCapable();
+  }
+
+  SubmissionClassLoader(URL[] urls, ClassLoader parent) {
+    super(urls, parent);
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    if (isShared(name)) return super.loadClass(name, resolve);
+    synchronized (getClassLoadingLock(name)) {
+      Class<?> c = findLoadedClass(name);
+      if (c == null) {
+        try {
+          c = findClass(name);
+        } catch (ClassNotFoundException exc) {
+          return super.loadClass(name, resolve);
+        }
+      }
+      if (resolve) resolveClass(c);
+      return c;
+    }
+  }
+
+  private static boolean isShared(String name) {
+    for (String prefix : SHARED_PACKAGES)
+      if (name.startsWith(prefix)) return true;
+    return false;
+  }
+}
@@ -0,0 +1,83 @@
+package es.upm.babel.sequenceTester;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The result of running the test suites against a submission (see {@link BatchRunner}).
+ */
+public final class SubmissionResult {
+  private final Path submission;
+  private final long testsFound;
+  private final long testsSucceeded;
+  private final List<String> failures;
+  private final boolean timedOut;
+  private final Throwable error;
+  private final long wallTime;
+
+  SubmissionResult(Path submission, long testsFound, long testsSucceeded, List<String> failures,
+                   boolean timedOut, Throwable error, long wallTime) {
+    this.submission = submission;
+    this.testsFound = testsFound;
+    this.testsSucceeded = testsSucceeded;
+    this.failures = failures;
+    this.timedOut = timedOut;
+    this.error = error;
+    this.wallTime = wallTime;
+  }
+
+  public Path getSubmission() {
+    return submission;
+  }
+
+  public long getTestsFound() {
+    return testsFound;
+  }
+
+  public long getTestsSucceeded() {
+    return testsSucceeded;
+  }
+
+  /**
+   * Returns the failed tests, each described by its name and failure message.
+   */
+  public List<String> getFailures() {
+    return failures;
+  }
+
+  /**
+   * Returns true if the tests did not finish within the timeout of the batch runner.
+   */
+  public boolean timedOut() {
+    return timedOut;
+  }
+
+  /**
+   * Returns the error which prevented running the tests (e.g., a missing
+   * test suite), or null.
+   */
+  public Throwable getError() {
+    return error;
+  }
+
+  /**
+   * Returns the time (in nanoseconds) spent running the tests.
+   */
+  public long getWallTime() {
+    return wallTime;
+  }
+
+  /**
+   * Returns true if all tests were run and succeeded.
+   */
+  public boolean isSuccessful() {
+    return !timedOut && error == null && failures.isEmpty() && testsSucceeded == testsFound;
+  }
+
+  public String toString() {
+    String result = submission+": "+testsSucceeded+"/"+testsFound+" tests succeeded";
+    if (timedOut) result += " (timed out)";
+    if (error != null) result += " ("+error+")";
+    return result;
+  }
+}
@@ -0,0 +1,73 @@
+package es.upm.babel.sequenceTester;
+
+/**
+ * The result of a finished test, as reported to a {@link ResultReporter}.
+ */
+public final class TestResult {
+  private final String name;
+  private final String configurationDescription;
+  private final boolean successful;
+  private final int executes;
+  private final int calls;
+  private final long wallTime;
+  private final String failure;
+
+  TestResult(String name, String configurationDescription, boolean successful,
+             int executes, int calls, long wallTime, String failure) {
+    this.name = name;
+    this.configurationDescription = configurationDescription;
+    this.successful = successful;
+    this.executes = executes;
+    this.calls = calls;
+    this.wallTime = wallTime;
+    this.failure = failure;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the configuration description of the test, or null if none was provided.
+   */
+  public String getConfigurationDescription() {
+    return configurationDescription;
+  }
+
+  public boolean isSuccessful() {
+    return successful;
+  }
+
+  /**
+   * Returns the number of executions of calls of the test.
+   */
+  public int getExecutes() {
+    return executes;
+  }
+
+  /**
+   * Returns the number of executed calls.
+   */
+  public int getCalls() {
+    return calls;
+  }
+
+  /**
+   * Returns the time (in nanoseconds) from the creation of the test until it finished.
+   */
+  public long getWallTime() {
+    return wallTime;
+  }
+
+  /**
+   * Returns the failure message (including the call trace) of a failed test,
+   * or null if it is not known.
+   */
+  public String getFailure() {
+    return failure;
+  }
+
+  public String toString() {
+    return name+": "+(successful ? "success" : "failure");
+  }
+}
@@ -1,45 +1,138 @@
 package es.upm.babel.sequenceTester;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 class Texts {
-  private static Locale locale;
-  private static ResourceBundle bundle;
+  // The formats of a text: capitalized (C), prefixed by a space (P), followed by a space (S)
+  private static final int CAPITALIZE = 1;
+  private static final int PREFIX_SPACE = 2;
+  private static final int SUFFIX_SPACE = 4;
+  private static final int FORMATS = 8;
 
-  static void setLocale(Locale locale) {
-    if ((Texts.locale == null) || !Texts.locale.equals(locale)) {
-      Texts.locale = locale;
+  // The texts of a locale, in all formats, and the segments of the message templates,
+  // computed once when the locale is set
+  static final class Table {
+    final Locale locale;
+    final Map<String,String[]> texts;
+    final String[][] messages;
+
+    Table(Locale locale, ResourceBundle bundle) {
+      this.locale = locale;
+      Map<String,String[]> formattedTexts = new HashMap<>();
+      for (String key : bundle.keySet()) {
+        String text = bundle.getString(key);
+        String[] formatted = new String[FORMATS];
+        for (int mask = 0; mask < FORMATS; mask++) formatted[mask] = format(text, mask);
+        formattedTexts.put(key, formatted);
+      }
+      texts = Collections.unmodifiableMap(formattedTexts);
+      // Check that the texts of all templates exist, rather than when a message is formatted
+      List<String> missing = new ArrayList<>();
+      for (Message message : Message.values()) {
+        for (String key : message.keys()) {
+          if (!texts.containsKey(key)) missing.add(message+": "+key);
+        }
+      }
+      if (!missing.isEmpty())
+        throw new IllegalStateException("the texts for locale "+locale+" lack the keys "+missing);
+      messages = new String[Message.values().length][];
+      for (Message message : Message.values()) messages[message.ordinal()] = message.segments(this);
+    }
+
+    String getText(String key, String format) {
+      return getText(key, mask(format));
+    }
+
+    private String getText(String key, int mask) {
+      String[] formatted = texts.get(key);
+      if (formatted == null) {
+        System.out.println("*** WARNING. Inform teachers: Key "+key+" does not exist in bundle for locale "+locale);
+        return format(key, mask);
+      }
+      return formatted[mask];
+    }
+  }
+
+  // The tables of the locales used so far (the locale of messages is
+  // a setting of each test, see Config.setTestLocale)
+  private static final ConcurrentHashMap<Locale,Table> tables = new ConcurrentHashMap<>();
+
+  // Returns the table of locale, reading its texts when it is first used
+  static Table table(Locale locale) {
+    Table table = tables.get(locale);
+    if (table == null) {
       if (!Arrays.asList(Locale.getAvailableLocales()).contains(locale)) {
         // Which locale to use for this message? :-)
         throw new RuntimeException("Locale "+locale+" is not available");
       }
+      ResourceBundle bundle;
       try {
         bundle = ResourceBundle.getBundle("texts", locale, new ResourceBundleUTF8Control());
       } catch (MissingResourceException exc) {
         throw new RuntimeException("Texts for locale "+locale+" are not available");
       }
+      Table created = new Table(locale, bundle);
+      table = tables.putIfAbsent(locale, created);
+      if (table == null) table = created;
     }
+    return table;
+  }
+
+  // The locale of the messages of the current test
+  static Locale getLocale() {
+    return Config.getTestLocale();
+  }
+
+  private static Table table() {
+    return table(getLocale());
   }
 
   static String getText(String key) {
-    if (locale == null)
-      throw new RuntimeException("No locale defined");
-    try { return bundle.getString(key); }
-    catch (MissingResourceException exc) {
-      System.out.println("*** WARNING. Inform teachers: Key "+key+" does not exist in bundle for locale "+locale);
-      return key;
-    }
+    return table().getText(key, 0);
   }
 
   static String getText(String key, String format) {
-    String text = getText(key);
-    if (format.contains("C")) text = capitalizeFirstLetter(text);
-    if (format.contains("P")) text = " "+text;
-    if (format.contains("S")) text += " ";
+    return table().getText(key, format);
+  }
+
+  // Returns the text of the template message, with the arguments inserted
+  static String format(Message message, Object... args) {
+    String[] segments = table().messages[message.ordinal()];
+    if (args.length != segments.length - 1)
+      throw new IllegalArgumentException(message+" expects "+(segments.length - 1)+" arguments");
+    StringBuilder result = new StringBuilder(64 * segments.length);
+    result.append(segments[0]);
+    for (int i = 0; i < args.length; i++) result.append(args[i]).append(segments[i + 1]);
+    return result.toString();
+  }
+
+  private static int mask(String format) {
+    int mask = 0;
+    for (int i = 0; i < format.length(); i++) {
+      switch (format.charAt(i)) {
+      case 'C': mask |= CAPITALIZE; break;
+      case 'P': mask |= PREFIX_SPACE; break;
+      case 'S': mask |= SUFFIX_SPACE; break;
+      default: break;
+      }
+    }
+    return mask;
+  }
+
+  private static String format(String text, int mask) {
+    if ((mask & CAPITALIZE) != 0) text = capitalizeFirstLetter(text);
+    if ((mask & PREFIX_SPACE) != 0) text = " "+text;
+    if ((mask & SUFFIX_SPACE) != 0) text += " ";
     return text;
   }
 
@@ -1,54 +1,168 @@
 package es.upm.babel.sequenceTester;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 /**
- * A wrapper process that tries to monitor if the execution of the
- * abstract method toTry is blocked or not.
+ * A wrapper task that tries to monitor if the execution of the
+ * abstract method toTry is blocked or not. The task is run by
+ * a thread provided by the executor configured for the test
+ * (see {@link CallExecutors}).
  */
-abstract class Tryer extends Thread {
-   volatile private boolean started = false;
-   volatile private boolean blocked = true;
-   volatile private boolean raisedException = false;
-   volatile private Throwable throwable = null; 
+abstract class Tryer implements Runnable {
+   // Opened when the executing thread has started running the task
+   private final CountDownLatch started = new CountDownLatch(1);
+   // Opened when the task has terminated
+   private final CountDownLatch finished = new CountDownLatch(1);
+   // If set, the task signals arrived and waits for gate to open before running
+   private CountDownLatch arrived = null;
+   private CountDownLatch gate = null;
+   // The thread running the task (while it runs)
+   private Thread thread = null;
+   // The return value of the task, set by the executing thread before
+   // the outcome is published
+   private boolean hasResult = false;
+   private Object result = null;
+   // The outcome of the task, null while the task has not terminated
+   volatile private Outcome outcome = null;
+   volatile private long startTime = 0;
+
+   /**
+    * The (immutable) outcome of a terminated task, published once by the
+    * executing thread so that a single read gives a consistent view of it.
+    */
+   static final class Outcome {
+      // When (System.nanoTime) the task terminated
+      final long endTime;
+      // The exception raised by the task, or null if it returned normally
+      final Throwable exception;
+      final boolean hasValue;
+      final Object value;
+
+      Outcome(long endTime, Throwable exception, boolean hasValue, Object value) {
+         this.endTime = endTime;
+         this.exception = exception;
+         this.hasValue = hasValue;
+         this.value = value;
+      }
+   }
+
+   // Returns the outcome of the task, or null if it has not terminated.
+   // Waits until the task has started running.
+   Outcome getOutcome() {
+      Outcome current = outcome;
+      if (current == null) {
+         awaitStart();
+         current = outcome;
+      }
+      return current;
+   }
 
    boolean isBlocked() {
-      if (!started) gimmeTime(0);
-      return blocked;
+      Outcome current = getOutcome();
+      return current == null || current.exception != null;
    }
 
    boolean raisedException() {
-     if (!started) {
-       gimmeTime(0);
-     }
-      return raisedException;
+      Outcome current = getOutcome();
+      return current != null && current.exception != null;
    }
 
    Throwable getException() {
-       return throwable;
-   }
-
-   // Un sleep sin excepciones
-   static void sleep (int ms) {
-      long initialTimeMillis = System.currentTimeMillis();
-      long remainTimeMillis = ms;
-      
-      while (remainTimeMillis > 0) {
-         try { Thread.sleep(remainTimeMillis); }
-         catch (InterruptedException e) { }
-         remainTimeMillis = ms - (System.currentTimeMillis() - initialTimeMillis);
+      Outcome current = outcome;
+      return current == null ? null : current.exception;
+   }
+
+   // Records the return value of the task (called by the executing thread)
+   void setResult(Object value) {
+      hasResult = true;
+      result = value;
+   }
+
+   // When (System.nanoTime) the task started and terminated
+   long getStartTime() {
+      return startTime;
+   }
+
+   long getEndTime() {
+      Outcome current = outcome;
+      return current == null ? 0 : current.endTime;
+   }
+
+   // Parks the calling thread until the task has started running
+   void awaitStart() {
+      awaitUninterruptibly(started);
+   }
+
+   // Returns true if the task has started running
+   boolean hasStartedRunning() {
+      return started.getCount() == 0;
+   }
+
+   // Waits at most nanos nanoseconds until the task has started running,
+   // returning true if it started
+   boolean awaitStart(long nanos) {
+      try {
+         return started.await(nanos, TimeUnit.NANOSECONDS);
+      } catch (InterruptedException exc) {
+         Thread.currentThread().interrupt();
+         return hasStartedRunning();
+      }
+   }
+
+   // Makes the task wait for gate to open, after signalling arrived,
+   // when it is run (before it is started)
+   void setGate(CountDownLatch arrived, CountDownLatch gate) {
+      this.arrived = arrived;
+      this.gate = gate;
+   }
+
+   private static void awaitUninterruptibly(CountDownLatch latch) {
+      boolean interrupted = false;
+      while (latch.getCount() > 0) {
+         try { latch.await(); }
+         catch (InterruptedException e) { interrupted = true; }
       }
+      if (interrupted) Thread.currentThread().interrupt();
+   }
+
+   // Interrupts the thread running the task, if the task is running
+   synchronized void interrupt() {
+      if (thread != null) thread.interrupt();
+   }
+
+   // Returns the thread running the task, or null if the task is not running
+   synchronized Thread getThread() {
+      return thread;
    }
 
-   void gimmeTime(int ms) {
-      while (!started) { }
-      Tryer.sleep(ms);
+   // Waits at most nanos nanoseconds for the task to terminate,
+   // returning true if it terminated
+   boolean awaitTermination(long nanos) throws InterruptedException {
+      return finished.await(nanos, TimeUnit.NANOSECONDS);
    }
 
    public void run() {
-      blocked = true;
-      started = true;
-      try { this.toTry(); blocked = false; }
-      catch (Throwable t) { raisedException = true; throwable = t; }
+      synchronized (this) { thread = Thread.currentThread(); }
+      if (gate != null) {
+         arrived.countDown();
+         awaitUninterruptibly(gate);
+      }
+      startTime = System.nanoTime();
+      started.countDown();
+      try { this.toTry(); outcome = new Outcome(System.nanoTime(), null, hasResult, result); }
+      catch (Throwable t) { outcome = new Outcome(System.nanoTime(), t, false, null); }
+      finally {
+         // Stop interrupts before the thread is reused for another task
+         synchronized (this) { thread = null; }
+         finished.countDown();
+         terminated();
+      }
    }
 
+   // Invoked by the executing thread when toTry has terminated,
+   // normally or with an exception
+   void terminated() { }
+
    abstract void toTry() throws Throwable;
 }
@@ -2,7 +2,11 @@ package es.upm.babel.sequenceTester;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -12,8 +16,11 @@ import java.util.Set;
  */
 
 public class Unblocks {
-  private final Set<Call<?>> mustUnblock;
-  private final Set<Call<?>> mayUnblock;
+  // The calls which must and may unblock, and their identifiers
+  private final Collection<Call<?>> mustUnblock;
+  private final Collection<Call<?>> mayUnblock;
+  private final BitSet mustIds;
+  private final BitSet mayIds;
 
   /**
    * Creates an unblocks specification.
@@ -21,8 +28,7 @@ public class Unblocks {
    * specifies which calls may unblock.
    */
   public Unblocks(Set<Call<?>> mustUnblock, Set<Call<?>> mayUnblock) {
-    this.mustUnblock =  mustUnblock == null ? new HashSet<>() : mustUnblock;
-    this.mayUnblock = mayUnblock == null ? new HashSet<>() : mayUnblock;
+    this(copy(mustUnblock), copy(mayUnblock));
   }
 
   /**
@@ -30,42 +36,65 @@ public class Unblocks {
    * that (some other) calls may be unblocked.
    */
   public Unblocks(List<Call<?>> mustCalls, List<Call<?>> mayCalls) {
-    this(new HashSet<>(mustCalls), new HashSet<>(mayCalls));
+    this(copy(mustCalls), copy(mayCalls));
+  }
+
+  // Keeps the collections, which must not change afterwards, as the identifiers are computed here
+  private Unblocks(Collection<Call<?>> mustUnblock, Collection<Call<?>> mayUnblock) {
+    this.mustUnblock = mustUnblock == null ? Collections.emptyList() : mustUnblock;
+    this.mayUnblock = mayUnblock == null ? Collections.emptyList() : mayUnblock;
+    this.mustIds = ids(this.mustUnblock);
+    this.mayIds = ids(this.mayUnblock);
+  }
+
+  // Checks that the calls of e unblocked the calls in mustUnblock and no calls other than those in
+  // mustUnblock or mayUnblock; the collections are not copied, as they are only used during the check
+  static void checkCalls(Execute e, Collection<Call<?>> mustUnblock, Collection<Call<?>> mayUnblock) {
+    new Unblocks(mustUnblock, mayUnblock).checkCalls(e);
+  }
+
+  private static Collection<Call<?>> copy(Collection<Call<?>> calls) {
+    return calls == null ? null : new ArrayList<>(calls);
+  }
+
+  private static BitSet ids(Collection<Call<?>> calls) {
+    BitSet ids = new BitSet();
+    for (Call<?> call : calls) ids.set(call.getId());
+    return ids;
   }
 
   //////////////////////////////////////////////////////////////////////
 
   void checkCalls(Execute e) {
-    UnitTest t = UnitTest.getCurrentTest();
     List<Call<?>> calls = e.getCalls();
-    Set<Call<?>> unblockedCalls = e.getUnblockedCalls();
+    BitSet unblockedIds = e.getUnblockedIds();
     
-    //System.out.println("checkCalls: unblocked="+unblockedCalls+" spec: "+this);
+    //System.out.println("checkCalls: unblocked="+e.getUnblockedCalls()+" spec: "+this);
 
     // Check that each unblocked call is either
     // listed in the may or must unblocked enumeration.
-    for (Call<?> unblockedCall : unblockedCalls) {
-      if (!mustUnblock.contains(unblockedCall) &&
-          !mayUnblock.contains(unblockedCall)) {
-        printReasonForUnblockingIncorrectly(unblockedCall,calls);
+    BitSet unexpected = (BitSet) unblockedIds.clone();
+    unexpected.andNot(mustIds);
+    unexpected.andNot(mayIds);
+    if (!unexpected.isEmpty()) {
+      int id = unexpected.nextSetBit(0);
+      for (Call<?> unblockedCall : e.getUnblockedCalls()) {
+        if (unblockedCall.getId() == id)
+          printReasonForUnblockingIncorrectly(unblockedCall,calls);
       }
     }
 
-    Set<Call<?>> wronglyUnblocked = new HashSet<>();
     // Check that each call that must have been unblocked,
     // is no longer blocked
-    for (Call<?> shouldBeUnblockedCall : mustUnblock) {
-      //if (e.getBlockedCalls().contains(shouldBeUnblockedCall)) {
-      if (!unblockedCalls.contains(shouldBeUnblockedCall)) {
-        wronglyUnblocked.add(shouldBeUnblockedCall);
+    BitSet notUnblocked = (BitSet) mustIds.clone();
+    notUnblocked.andNot(unblockedIds);
+    if (!notUnblocked.isEmpty()) {
+      Set<Call<?>> wronglyUnblocked = new LinkedHashSet<>();
+      for (Call<?> shouldBeUnblockedCall : mustUnblock) {
+        if (notUnblocked.get(shouldBeUnblockedCall.getId()))
+          wronglyUnblocked.add(shouldBeUnblockedCall);
       }
-    }
-
-    if (wronglyUnblocked.size() > 0) {
-      UnitTest.failTest
-        (Texts.getText("the_calls","S")+Call.printCalls(wronglyUnblocked)+
-         Texts.getText("were_not","PS")+Texts.getText("unblocked_plural","S")+
-         Texts.getText("although_they_should_have_been","S")+"\n");
+      UnitTest.failTest(() -> Texts.format(Message.WERE_NOT_UNBLOCKED, Call.printCalls(wronglyUnblocked)));
     }
 
     for (Call<?> call : calls) {
@@ -74,8 +103,8 @@ public class Unblocks {
   }
     
   private String returned(Object value) {
-    if (value == null) return Texts.getText("terminated_normally");
-    else return Texts.getText("returned_the_value","S")+value;
+    if (value == null) return Texts.format(Message.BUT_TERMINATED_NORMALLY);
+    else return Texts.format(Message.BUT_RETURNED_THE_VALUE, value);
   }
   
   private String prefixConfigurationDescription(String configurationDescription) {
@@ -86,15 +115,11 @@ public class Unblocks {
   private void printReasonForUnblockingIncorrectly(Call<?> call, List<Call<?>> calls) {
     if (call.raisedException()) {
       Throwable exc = call.intGetException();
-      StringWriter errors = new StringWriter();
-      exc.printStackTrace(new PrintWriter(errors));
-      String StackTrace = errors.toString();
-      
-      UnitTest.failTest
-        (Texts.getText("the_call","S") + call.printCall()+
-         Texts.getText("should_block_singular","P")+ "\n" +
-         Texts.getText("but","S") + Texts.getText("raised_the_exception","S") + exc +
-         "\n\nStacktrace:\n"+StackTrace+"\n");
+      UnitTest.failTest(() -> {
+          StringWriter errors = new StringWriter();
+          exc.printStackTrace(new PrintWriter(errors));
+          return Texts.format(Message.SHOULD_BLOCK_BUT_RAISED, call.printCall(), exc, errors.toString());
+        });
     } else {
       boolean justExecuted = false;
       for (Call<?> executingCall : calls) {
@@ -104,18 +129,12 @@ public class Unblocks {
         }
       }
       
-      String blockStr;
+      String returnString = call.returnsValue() ? returned(call.intGetReturnValue()) : "";
+
       if (justExecuted)
-        blockStr = Texts.getText("should_block_singular","P");
+        UnitTest.failTest(() -> Texts.format(Message.SHOULD_BLOCK, call.printCall(), returnString));
       else
-        blockStr = Texts.getText("should_still_be_blocked_singular","SP") +
-          Texts.getText("after","S") + Texts.getText("the_calls","S") + Call.printCalls(calls);
-      
-      String returnString = "";
-      if (call.returnsValue()) returnString = Texts.getText("but","S") + returned(call.intGetReturnValue());
-
-      UnitTest.failTest
-        (Texts.getText("the_call","S") + call.printCall() + blockStr + " " + returnString+"\n");
+        UnitTest.failTest(() -> Texts.format(Message.SHOULD_STILL_BE_BLOCKED, call.printCall(), Call.printCalls(calls), returnString));
     }
   }
 
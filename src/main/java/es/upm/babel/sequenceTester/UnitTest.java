@@ -1,6 +1,15 @@
 package es.upm.babel.sequenceTester;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 
 /**
@@ -8,12 +17,18 @@ import java.util.*;
  * of the Call class.
  */
 public class UnitTest {
-  static String testName;
-  static Map<String,Boolean> testResults;
-  private static UnitTest currentTest = null;
-  private static Locale locale;
+  // The results of the finished tests, per (context) class loader, so that the tests
+  // of the submissions tested by a BatchRunner are not mixed
+  private static final PerClassLoader<Map<String,Boolean>> testResults =
+    new PerClassLoader<>(ConcurrentHashMap::new);
+  // The reporters receiving the results of finished tests
+  private static final List<ResultReporter> resultReporters = new CopyOnWriteArrayList<>();
+  // The test executing in a thread (and in the threads it creates),
+  // permitting tests to run in parallel
+  private static final InheritableThreadLocal<UnitTest> currentTest = new InheritableThreadLocal<>();
+  private final String testName;
   private String configurationDescription;
-  private List<Execute> history = new ArrayList<>();
+  private History history = History.EMPTY;
 
   // All calls created through invoking the Call constructor
   private final Set<Call<?>> allCreatedCalls = new HashSet<>();
@@ -24,6 +39,19 @@ public class UnitTest {
   // All calls unblocked
   private final Set<Call<?>> allUnblockedCalls = new HashSet<>();
 
+  // Unblocked calls which raised an exception that has not been checked
+  private final Set<Call<?>> pendingExceptions = new LinkedHashSet<>();
+
+  // In compact mode, the unblocked calls not yet settled (checked)
+  private final List<Call<?>> unsettledCalls = new ArrayList<>();
+
+  // Calls left blocked by forks which were not adopted (e.g., alternatives
+  // which failed), reaped when the test finishes
+  private final List<Call<?>> abandonedCalls = new ArrayList<>();
+
+  // The number of executed calls
+  private int executedCalls = 0;
+
   // All calls currently blocked
   private final Set<Call<?>> blockedCalls = new HashSet<>();
 
@@ -34,7 +62,31 @@ public class UnitTest {
   private Execute lastExecute = null;
 
   private boolean failedTest = false;
+  // The failure message of a failed test (if known)
+  private volatile String failure = null;
+  // When the test was created
+  private final long startTime;
+
+  // Generates the identifiers of the calls of the test (shared with forks)
+  private final AtomicInteger callCounter;
+
+  // Calls that terminated but have not yet been removed from blockedCalls
+  private final LinkedBlockingQueue<Call<?>> terminatedCalls = new LinkedBlockingQueue<>();
 
+  // Snapshot of blockedCalls after the last Execute
+  private Set<Call<?>> blockedCallsSnapshot = Collections.emptySet();
+
+  // The number of executes of the test
+  private int executes = 0;
+
+  // The log recording the schedule of the test, and the schedule being replayed
+  private volatile EventLog eventLog = null;
+  private Replay replay = null;
+
+  // The test this test was forked from (if any), and the active forks of
+  // this test, e.g., alternatives checked in parallel
+  private final UnitTest parent;
+  private final List<UnitTest> forks = new CopyOnWriteArrayList<>();
   
   /**
    * Constructs a unit test.
@@ -45,31 +97,187 @@ public class UnitTest {
    */
   public UnitTest(String name) {
     testName = name;
-    if (testResults == null)
-      testResults = new HashMap<>();
-    currentTest = this;
-    Call.reset();
+    startTime = System.nanoTime();
+    parent = null;
+    callCounter = new AtomicInteger(1);
+    currentTest.set(this);
     Config.installTestConfig();
-    if (locale == null) {
-      locale = new Locale("es");
-      Texts.setLocale(locale);
-    }
   }
   
+  // Creates a fork of a test, i.e., a test with a copy of its state
+  // which calls may be executed independently of the forked test
+  private UnitTest(UnitTest parent) {
+    testName = parent.testName;
+    startTime = parent.startTime;
+    this.parent = parent;
+    callCounter = parent.callCounter;
+    configurationDescription = parent.configurationDescription;
+    copyState(parent);
+  }
+
+  UnitTest fork() {
+    UnitTest fork = new UnitTest(this);
+    forks.add(fork);
+    return fork;
+  }
+
+  // Returns true if this test is test, or has been forked from it
+  boolean isForkOf(UnitTest test) {
+    for (UnitTest fork = this; fork != null; fork = fork.parent)
+      if (fork == test) return true;
+    return false;
+  }
+
+  // Stops forwarding terminated calls to a fork, and if adopt is true, continues
+  // the test from the state of the fork
+  void join(UnitTest fork, boolean adopt) {
+    forks.remove(fork);
+    if (adopt) copyState(fork);
+    else {
+      fork.calculateUnblocked();
+      for (Call<?> call : fork.blockedCalls) {
+        if (!blockedCalls.contains(call)) abandonedCalls.add(call);
+      }
+    }
+    abandonedCalls.addAll(fork.abandonedCalls);
+  }
+
+  private void copyState(UnitTest other) {
+    history = other.history;
+    allCreatedCalls.clear(); allCreatedCalls.addAll(other.allCreatedCalls);
+    allCalls.clear(); allCalls.addAll(other.allCalls);
+    allUnblockedCalls.clear(); allUnblockedCalls.addAll(other.allUnblockedCalls);
+    unsettledCalls.clear(); unsettledCalls.addAll(other.unsettledCalls);
+    pendingExceptions.clear(); pendingExceptions.addAll(other.pendingExceptions);
+    executedCalls = other.executedCalls;
+    blockedCalls.clear(); blockedCalls.addAll(other.blockedCalls);
+    lastUnblockedCalls = other.lastUnblockedCalls;
+    lastExecute = other.lastExecute;
+    blockedCallsSnapshot = other.blockedCallsSnapshot;
+    failedTest = other.failedTest;
+    executes = other.executes;
+  }
+
+  // Makes test the current test of the calling thread (or none if test is null)
+  static void setCurrentTest(UnitTest test) {
+    if (test == null) currentTest.remove();
+    else currentTest.set(test);
+  }
+
+  /**
+   * Records the schedule of the test, i.e., the order in which calls are started
+   * and when calls terminate, to a binary log, which can be replayed using
+   * {@link #replaySchedule(Path)}. The log is closed when the test finishes.
+   */
+  public UnitTest recordSchedule(Path log) throws IOException {
+    eventLog = new EventLog(log);
+    return this;
+  }
+
+  /**
+   * Replays the schedule recorded (using {@link #recordSchedule(Path)}) in log, i.e.,
+   * starts calls in the recorded order, and checks that each execution of calls
+   * unblocks the same calls as when recorded.
+   */
+  public UnitTest replaySchedule(Path log) throws IOException {
+    replay = new Replay(log);
+    return this;
+  }
+
+  // When (System.nanoTime) the test was created
+  long getStartTime() {
+    return startTime;
+  }
+
+  int getExecutes() {
+    return executes;
+  }
+
+  /**
+   * Returns the metrics of the calls executed by the test, in the order
+   * they were executed.
+   */
+  public List<CallMetrics> getCallMetrics() {
+    List<CallMetrics> metrics = new ArrayList<>();
+    for (Execute e : history().asList()) metrics.addAll(e.getCallMetrics());
+    return metrics;
+  }
+
   /**
-   * Specifies the locale used for messages.
+   * Returns the number of times the executions of calls of the test
+   * woke up to check for unblocked calls.
+   */
+  public int getPollTicks() {
+    int pollTicks = 0;
+    for (Execute e : history().asList()) pollTicks += e.getPollTicks();
+    return pollTicks;
+  }
+
+  /**
+   * Returns histograms of the latencies of the unblocked calls of all tests, per name of
+   * the call class or call template (for the call classes, and the operations of call
+   * templates, loaded by the context class loader of the calling thread).
+   * The latency of a call is measured from its start, or from the start of the execution
+   * of calls that unblocked it, until it terminated. Latencies are only recorded
+   * by tests using adaptive wait times (see Config.setAdaptiveWaitTime).
+   */
+  public static Map<String,LatencyHistogram> getCallLatencies() {
+    return Config.getCallLatencies();
+  }
+
+  /**
+   * Prints the latencies of the calls of all tests, per call class or call template.
+   */
+  public static void reportCallLatencies() {
+    System.out.println("\n\n========================================\n");
+    for (Map.Entry<String,LatencyHistogram> entry : getCallLatencies().entrySet())
+      System.out.println(entry.getKey()+": "+entry.getValue());
+    System.out.println("\n========================================");
+  }
+
+  EventLog getEventLog() {
+    return eventLog;
+  }
+
+  Replay getReplay() {
+    return replay;
+  }
+
+  /**
+   * Specifies the locale used for messages, i.e., the standard locale
+   * (see Config.setLocale) and the locale of the current test, if any.
    */
   public static void setLocale(String language) {
-    locale = new Locale(language);
-    Texts.setLocale(locale);
+    setLocale(new Locale(language));
   }
 
   /**
-   * Specifies the locale used for messages.
+   * Specifies the locale used for messages, i.e., the standard locale
+   * (see Config.setLocale) and the locale of the current test, if any.
    */
   public static void setLocale(String language, String country) {
-    locale = new Locale(language,country);
-    Texts.setLocale(locale);
+    setLocale(new Locale(language,country));
+  }
+
+  private static void setLocale(Locale locale) {
+    Config.setLocale(locale);
+    Config.setTestLocale(locale);
+  }
+
+  /**
+   * Specifies the locale used for the messages of the current test only,
+   * e.g., when tests using different locales run in parallel.
+   */
+  public static void setTestLocale(String language) {
+    Config.setTestLocale(new Locale(language));
+  }
+
+  /**
+   * Specifies the locale used for the messages of the current test only,
+   * e.g., when tests using different locales run in parallel.
+   */
+  public static void setTestLocale(String language, String country) {
+    Config.setTestLocale(new Locale(language,country));
   }
   
   enum ErrorLocation {
@@ -80,10 +288,20 @@ public class UnitTest {
    * Returns the currently executing test.
    */
   public static UnitTest getCurrentTest() {
-    if (currentTest == null)
+    UnitTest test = currentTest.get();
+    if (test == null)
       failTestSyntax
         ("There is no current test -- has an UnitTest instance been created?", ErrorLocation.INSIDE, true);
-    return currentTest;
+    return test;
+  }
+
+  // Returns the currently executing test, or null if there is none
+  static UnitTest currentTestOrNull() {
+    return currentTest.get();
+  }
+
+  int nextCallId() {
+    return callCounter.getAndIncrement();
   }
 
   /**
@@ -146,6 +364,27 @@ public class UnitTest {
     if (includeTrace) msg += "\n\n"+errorTrace(loc);
     org.junit.jupiter.api.Assertions.fail(msg);
   }
+
+  /**
+   * Indicate a unit test fail, building the message only if it is needed.
+   */
+  static void failTest(Supplier<String> msg) {
+    failTest(msg, false, ErrorLocation.LASTLINE);
+  }
+
+  /**
+   * Indicate a unit test fail, building the message only if it is needed.
+   * The trace is the trace at the time of the failure.
+   */
+  static void failTest(Supplier<String> msg, boolean includeTrace, ErrorLocation loc) {
+    Supplier<String> message = msg;
+    if (includeTrace) {
+      History trace = getCurrentTest().history();
+      int window = Config.getTestTraceWindow();
+      message = () -> msg.get()+"\n\n"+errorTrace(loc, trace, window);
+    }
+    throw new LazyAssertionFailedError(message);
+  }
   
   Set<Call<?>> getAllCreatedCalls() {
     return allCreatedCalls;
@@ -160,6 +399,15 @@ public class UnitTest {
     return allUnblockedCalls;
   }
 
+  // Returns the unblocked calls which raised an exception that has not been checked
+  Set<Call<?>> getPendingExceptions() {
+    return pendingExceptions;
+  }
+
+  void exceptionChecked(Call<?> call) {
+    pendingExceptions.remove(call);
+  }
+
   /**
    * Returns the set of all calls that were unblocked by the latest command.
    */
@@ -184,36 +432,100 @@ public class UnitTest {
     return blockedCalls;
   }
 
-  void prepareToRun(Execute e) {
+  // Returns the index of e among the executes of the test
+  int prepareToRun(Execute e) {
     for (Call<?> call : e.getCalls()) {
       allCalls.add(call);
       blockedCalls.add(call);
     }
+    executedCalls += e.getCalls().size();
     lastExecute = e;
     lastUnblockedCalls = new HashSet<>();
+    // Forks share executes with the test they were forked from, so only that test compacts them
+    if (Config.getTestCompactCalls() && parent == null) releaseSettledCalls();
+    return ++executes;
+  }
+
+  // Stops referencing the unblocked calls which have been checked, and
+  // compacts the executes (except the last one) whose calls are all settled
+  private void releaseSettledCalls() {
+    int remaining = 0;
+    for (Call<?> call : unsettledCalls) {
+      if (call.isSettled()) {
+        allCreatedCalls.remove(call);
+        allCalls.remove(call);
+        allUnblockedCalls.remove(call);
+        call.getExecute().callSettled();
+      } else unsettledCalls.set(remaining++, call);
+    }
+    unsettledCalls.subList(remaining, unsettledCalls.size()).clear();
   }
 
   void afterRun(Execute e) {
-    history.add(e);
+    history = history.append(e);
   }
   
-  void calculateUnblocked()
-  {
-    for (Call<?> blockedCall : blockedCalls) {
-      if (!blockedCall.isBlocked()) {
-        lastUnblockedCalls.add(blockedCall);
-      }
+  // Notifies the test of a terminated call, and its forks, and the tests
+  // it was forked from, as they may continue from the state of this test
+  void callTerminated(Call<?> call) {
+    post(call);
+    for (UnitTest test = parent; test != null; test = test.parent)
+      test.terminatedCalls.add(call);
+  }
+
+  private void post(Call<?> call) {
+    terminatedCalls.add(call);
+    for (UnitTest fork : forks) fork.post(call);
+  }
+
+  // Waits (at most timeout nanoseconds) until some call terminates,
+  // and computes unblocked calls
+  void awaitUnblocked(long timeout) {
+    try {
+      Call<?> call = terminatedCalls.poll(timeout, TimeUnit.NANOSECONDS);
+      if (call != null) unblocked(call);
+    } catch (InterruptedException exc) {
+      // best effort
     }
-    blockedCalls.removeAll(lastUnblockedCalls);
-    allUnblockedCalls.addAll(lastUnblockedCalls);
+    calculateUnblocked();
   }
-  
+
+  // Computes unblocked calls (and changes blockedCalls), considering only the
+  // calls that terminated since the last computation
+  void calculateUnblocked() {
+    Call<?> call;
+    while ((call = terminatedCalls.poll()) != null)
+      unblocked(call);
+  }
+
+  private void unblocked(Call<?> call) {
+    if (blockedCalls.remove(call)) {
+      lastUnblockedCalls.add(call);
+      allUnblockedCalls.add(call);
+      if (call.raisedException() && !call.didCheckForException()) pendingExceptions.add(call);
+      if (Config.getTestCompactCalls()) unsettledCalls.add(call);
+      call.unblockedBy(lastExecute);
+      if (Config.getTestAdaptiveWaitTime())
+        Config.recordLatency(call.latencyLoader(), call.latencyKey(), call.unblockLatency(lastExecute));
+    }
+  }
+
+  // Returns an unmodifiable snapshot of the blocked calls after e has run.
+  // The previous snapshot is reused when e did not change the blocked calls,
+  // i.e., when exactly the calls of e were unblocked.
+  Set<Call<?>> snapshotBlockedCalls(Execute e) {
+    List<Call<?>> calls = e.getCalls();
+    if (lastUnblockedCalls.size() != calls.size() || !lastUnblockedCalls.containsAll(calls))
+      blockedCallsSnapshot = Collections.unmodifiableSet(new HashSet<>(blockedCalls));
+    return blockedCallsSnapshot;
+  }
+
   public static void reportTestResults() {
     ArrayList<String> successes = new ArrayList<>();
     ArrayList<String> failures = new ArrayList<>();
     boolean hasErrors = false;
     
-    for (Map.Entry<String,Boolean> entry : testResults.entrySet()) {
+    for (Map.Entry<String,Boolean> entry : testResults.get().entrySet()) {
       String name = entry.getKey();
       Boolean result = entry.getValue();
       if (result) successes.add(name);
@@ -236,83 +548,207 @@ public class UnitTest {
   }
   
   static String mkTrace(int startingFrom, int endsWith) {
+    return mkTrace(getCurrentTest().history(), Config.getTestTraceWindow(), startingFrom, endsWith);
+  }
+
+  // Returns the trace of the steps startingFrom to endsWith of history
+  static String mkTrace(History history, int window, int startingFrom, int endsWith) {
     StringBuilder trace = new StringBuilder();
-    List<Execute> history = getCurrentTest().getHistory();
-    for (int i = startingFrom; i < Math.min(history.size(),endsWith+1); i++) {
-      Execute e = history.get(i);
-      List<Call<?>> calls = e.getCalls();
-      Set<Call<?>> newUnblocked = e.getUnblockedCalls();
-      
-      String unblocksString="";
-      for (Call<?> unblockedCall : newUnblocked) {
-        String callString = unblockedCall.printCallWithReturn();
-        if (Objects.equals(unblocksString, "")) unblocksString=callString;
-        else unblocksString+=", "+callString;
-      }
-      if (!Objects.equals(unblocksString, ""))
-        unblocksString = " --> "+Texts.getText("unblocked_singular","S")+unblocksString;
-    
-      StringBuilder callsString = new StringBuilder();
-      String indent = calls.size() > 1 ? "  " : "";
-      
-      for (Call<?> call : calls) {
-        if (!callsString.toString().equals("")) callsString.append("\n").append(indent).append(call.printCall());
-        else callsString = new StringBuilder(indent + call.printCall());
-      }
-      
-      String callPlusUnblock;
-      if (calls.size() > 1)
-        callPlusUnblock = "===  "+Texts.getText("calls_executed_in_parallel")+": \n"+callsString+
-          "\n "+unblocksString;
-      else
-        callPlusUnblock = callsString+unblocksString;
-      
-      trace.append(callPlusUnblock).append("\n");
+    try {
+      appendTrace(trace, history, window, startingFrom, endsWith);
+    } catch (IOException exc) {
+      // A StringBuilder does not raise IOException
+      throw new UncheckedIOException(exc);
     }
     return trace.toString();
   }
 
+  /**
+   * Writes the call trace of the test to out. If a trace window has been configured
+   * (see {@link Config#setTraceWindow(int)}) only the last steps of the trace are written,
+   * preceded by a summary of the omitted steps.
+   */
+  public void appendTrace(Appendable out) throws IOException {
+    appendTrace(out, 0, history.size()-1);
+  }
+
+  void appendTrace(Appendable out, int startingFrom, int endsWith) throws IOException {
+    appendTrace(out, history, Config.getTestTraceWindow(), startingFrom, endsWith);
+  }
+
+  private static void appendTrace(Appendable out, History history, int window, int startingFrom, int endsWith)
+    throws IOException {
+    int end = Math.max(0, Math.min(history.size(), endsWith+1));
+    Execute[] executes = history.range(Math.max(0, Math.min(startingFrom, end)), end);
+    int first = 0;
+    if (window > 0 && executes.length > window) {
+      int omitted = executes.length - window;
+      int omittedCalls = 0;
+      for (int i = 0; i < omitted; i++)
+        omittedCalls += executes[i].size();
+      out.append("... ").append(String.valueOf(omitted)).append(" ").append(Texts.getText("earlier_steps_omitted"))
+        .append(" (").append(String.valueOf(omittedCalls)).append(" ").append(Texts.getText("calls")).append(")\n");
+      first = omitted;
+    }
+    for (int i = first; i < executes.length; i++)
+      executes[i].appendTrace(out);
+  }
+
   static String mkTrace() {
     return mkTrace(0);
   }
   
   static String mkTrace(int startingFrom) {
-    return mkTrace(startingFrom,UnitTest.getCurrentTest().getHistory().size()-1);
+    return mkTrace(startingFrom,UnitTest.getCurrentTest().history().size()-1);
   }
 
   void setFailedTest() {
     failedTest = true;
   }
+
+  void setFailure(String msg) {
+    failure = msg;
+  }
+
+  /**
+   * Adds a reporter which receives the result of each test when it finishes.
+   */
+  public static void addResultReporter(ResultReporter reporter) {
+    resultReporters.add(reporter);
+  }
+
+  /**
+   * Removes a result reporter (without closing it).
+   */
+  public static void removeResultReporter(ResultReporter reporter) {
+    resultReporters.remove(reporter);
+  }
+
+  /**
+   * Removes and closes all result reporters.
+   */
+  public static void closeResultReporters() throws IOException {
+    for (ResultReporter reporter : resultReporters) {
+      resultReporters.remove(reporter);
+      reporter.close();
+    }
+  }
+
+  private void reportResult(Throwable checkFailure) {
+    if (resultReporters.isEmpty()) return;
+    String failureMsg = failure;
+    if (failureMsg == null && checkFailure != null) failureMsg = checkFailure.getMessage();
+    TestResult result =
+      new TestResult(testName, configurationDescription, !failedTest && checkFailure == null,
+                     executes, executedCalls, System.nanoTime() - startTime, failureMsg);
+    try {
+      for (ResultReporter reporter : resultReporters) reporter.report(result);
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+  }
   
   /**
    * Method obligatory to call in an @AfterEach clause or as the last statement in
    * a test.
    */
   public void finish() {
-    // Check if the last call resulted in an exception
-    if (allUnblockedCalls.size() > 0)
-      Call.checkExceptions(allUnblockedCalls, true);
+    finish(true);
+  }
+
+  // Performs the post-test checks; the test result is recorded (see reportTestResults)
+  // and reported (see addResultReporter) only if record is true
+  void finish(boolean record) {
+    try {
+      if (eventLog != null) {
+        try { eventLog.close(); }
+        catch (IOException exc) { throw new UncheckedIOException(exc); }
+      }
+
+      try {
+        // Check if the last call resulted in an exception
+        if (pendingExceptions.size() > 0)
+          Call.checkExceptions(pendingExceptions, true);
+
+        if (record) testResults.get().put(testName, !failedTest);
 
-    testResults.put(testName, !failedTest);
+        if (!failedTest) {
+          // Check for created calls that were never executed -- a test syntax error
+          for (Call<?> call : allCreatedCalls) {
+            if (!call.hasStarted()) {
+              failTestSyntax("call "+call+" was created but never executed", ErrorLocation.INSIDE, true);
+            }
+          }
 
-    if (!failedTest) {
-      // Check for created calls that were never executed -- a test syntax error
-      for (Call<?> call : allCreatedCalls) {
-        if (!call.hasStarted()) {
-          failTestSyntax("call "+call+" was created but never executed", ErrorLocation.INSIDE, true);
+          // Check for all calls that they checked unblocks
+          for (Call<?> call : allCreatedCalls) {
+            if (!call.didCheckForUnblocks()) {
+              failTestSyntax("call "+call+" did not check unblocks status", ErrorLocation.INSIDE, true);
+            }
+          }
         }
+      } catch (RuntimeException | Error exc) {
+        if (record) reportResult(exc);
+        throw exc;
       }
+      if (record) reportResult(null);
+    } finally {
+      reapBlockedCalls();
+      // Threads created by this thread later must not inherit the finished test
+      if (parent == null && currentTest.get() == this) {
+        currentTest.remove();
+        Config.installTestConfig(null);
+      }
+    }
+  }
 
-      // Check for all calls that they checked unblocks
-      for (Call<?> call : allCreatedCalls) {
-        if (!call.didCheckForUnblocks()) {
-          failTestSyntax("call "+call+" did not check unblocks status", ErrorLocation.INSIDE, true);
+  // The reap time of a test with a time budget, if no reap time is set
+  private static final int BUDGET_REAP_TIME = 100;
+
+  // Interrupts the calls still blocked, if reaping is configured (see Config.setReapTime)
+  // or the test has a time budget, and waits for them to terminate, so that their
+  // threads are not left parked forever. Calls which do not terminate are reported
+  // with their stack traces. Calls left blocked by forks which were not adopted
+  // (losing alternatives) are always interrupted.
+  private void reapBlockedCalls() {
+    calculateUnblocked();
+    int reapTime = Config.getReapTime();
+    if (reapTime <= 0 && Config.getTestTimeBudget() > 0) reapTime = BUDGET_REAP_TIME;
+    List<Call<?>> calls = new ArrayList<>(abandonedCalls);
+    if (reapTime > 0) calls.addAll(blockedCalls);
+    if (calls.isEmpty()) return;
+    for (Call<?> call : calls) call.interrupt();
+    if (reapTime <= 0) return;
+    long deadline = System.nanoTime() + reapTime * 1000000L;
+    boolean interrupted = false;
+    for (Call<?> call : calls) {
+      boolean terminated = false;
+      while (true) {
+        try {
+          terminated = call.awaitTermination(deadline - System.nanoTime());
+          break;
+        } catch (InterruptedException exc) {
+          interrupted = true;
         }
       }
+      Thread thread = call.getThread();
+      if (!terminated && thread != null) {
+        StringBuilder msg = new StringBuilder();
+        msg.append("*** call ").append(call).append(" of test ").append(testName)
+          .append(" could not be stopped; it is executed by ").append(thread).append("\n");
+        for (StackTraceElement element : thread.getStackTrace())
+          msg.append("\tat ").append(element).append("\n");
+        System.err.print(msg);
+      }
     }
+    if (interrupted) Thread.currentThread().interrupt();
   }
 
   static String errorTrace(ErrorLocation loc) {
+    return errorTrace(loc, getCurrentTest().history(), Config.getTestTraceWindow());
+  }
+
+  static String errorTrace(ErrorLocation loc, History history, int window) {
     String locString = Texts.getText("detected","S");
     if (loc == ErrorLocation.LASTLINE)
       locString = Texts.getText("in_the_last_line");
@@ -320,23 +756,73 @@ public class UnitTest {
       locString = Texts.getText("inside","S")+Texts.getText("the_call_trace");
     else if (loc == ErrorLocation.AFTER)
       locString = Texts.getText("after","S")+Texts.getText("the_call_trace");
-    return Texts.getText("call_trace","SC")+"("+Texts.getText("error","S")+locString+"):\n\n"+mkTrace()+"\n";
+    StringBuilder trace = new StringBuilder();
+    trace.append(Texts.getText("call_trace","SC")).append("(").append(Texts.getText("error","S")).append(locString).append("):\n\n");
+    trace.append(mkTrace(history, window, 0, history.size()-1));
+    return trace.append("\n").toString();
   }
 
   /**
    * Sets the execution history.
    */
   public void setHistory(List<Execute> history) {
-    this.history = history;
+    this.history = History.of(history);
   }
   
   /**
-   * Returns the execution history.
+   * Returns the execution history. The list reflects later executions of calls,
+   * and changing the list changes the history of the test.
    */
   public List<Execute> getHistory() {
+    return historyView;
+  }
+
+  // A list view of the (persistent) history of the test; reading it is cheap,
+  // while changing it (other than adding at the end) copies the history
+  private final List<Execute> historyView = new AbstractList<Execute>() {
+      public Execute get(int index) {
+        return history.get(index);
+      }
+
+      public int size() {
+        return history.size();
+      }
+
+      public void add(int index, Execute e) {
+        if (index == history.size()) history = history.append(e);
+        else {
+          List<Execute> executes = new ArrayList<>(history.asList());
+          executes.add(index, e);
+          history = History.of(executes);
+        }
+        modCount++;
+      }
+
+      public Execute set(int index, Execute e) {
+        List<Execute> executes = new ArrayList<>(history.asList());
+        Execute previous = executes.set(index, e);
+        history = History.of(executes);
+        return previous;
+      }
+
+      public Execute remove(int index) {
+        List<Execute> executes = new ArrayList<>(history.asList());
+        Execute removed = executes.remove(index);
+        history = History.of(executes);
+        modCount++;
+        return removed;
+      }
+    };
+
+  History history() {
     return history;
   }
 
+  // Restores a history, e.g., one saved before trying an alternative
+  void resetHistory(History history) {
+    this.history = history;
+  }
+
   /**
    * Returns the name of the test.
    */
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.*;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static es.upm.babel.sequenceTester.SeqAssertions.assertEquals;
 
@@ -39,6 +40,667 @@ public class LibraryTest {
         SeqAssertions.assertUnblocks(fail, List.of(fail));
     }
 
+    @Test
+    public void test_message_bundles() throws java.io.IOException {
+        // Setting a locale checks the texts of every message template against its bundle
+        UnitTest.setLocale("es");
+        UnitTest.setLocale("en");
+        // Also inside a test the locale of the tests created afterwards is set
+        Assertions.assertEquals(new java.util.Locale("en"), Config.getLocale());
+        java.util.Properties es = new java.util.Properties();
+        java.util.Properties en = new java.util.Properties();
+        try (java.io.InputStream in = LibraryTest.class.getResourceAsStream("/texts_es.properties")) { es.load(in); }
+        try (java.io.InputStream in = LibraryTest.class.getResourceAsStream("/texts_en.properties")) { en.load(in); }
+        Assertions.assertEquals(new java.util.TreeSet<>(es.keySet()), new java.util.TreeSet<>(en.keySet()));
+    }
+
+    @Test
+    public void test_unblocks_copies_calls() {
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        Call<?> inc = new Inc(counter);
+        List<Call<?>> must = new java.util.ArrayList<>(List.of(inc));
+        Unblocks unblocks = new Unblocks(must, null);
+        String spec = unblocks.toString();
+        must.clear();
+        Assertions.assertEquals(spec, unblocks.toString());
+        inc.assertUnblocks();
+    }
+
+    @Test
+    public void test_parallel_unit_tests() throws Exception {
+        // Two tests run at the same time, each with its own locale and counter
+        String[] languages = {"en", "es"};
+        String[] messages = new String[languages.length];
+        Throwable[] errors = new Throwable[languages.length];
+        java.util.concurrent.CyclicBarrier barrier = new java.util.concurrent.CyclicBarrier(languages.length);
+        Thread[] threads = new Thread[languages.length];
+        for (int i = 0; i < languages.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    UnitTest parallelTest = new UnitTest("parallel test "+languages[index]);
+                    UnitTest.setTestLocale(languages[index]);
+                    barrier.await(10, java.util.concurrent.TimeUnit.SECONDS);
+                    Counter counter = new CreateCounter().assertGetReturnValue();
+                    new Set(counter,0).assertReturns();
+                    barrier.await(10, java.util.concurrent.TimeUnit.SECONDS);
+                    SeqAssertions.assertFail
+                        (() -> {
+                            try {
+                                new Dec(counter).assertReturnsValue(5);
+                            } catch (org.opentest4j.AssertionFailedError exc) {
+                                messages[index] = exc.getMessage();
+                                throw exc;
+                            }
+                        }, false);
+                    parallelTest.finish();
+                } catch (Throwable exc) {
+                    errors[index] = exc;
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join(30000);
+        for (Throwable error : errors) if (error != null) throw new AssertionError(error);
+        Assertions.assertTrue(messages[0].startsWith("the call dec()"), messages[0]);
+        Assertions.assertTrue(messages[1].startsWith("la llamada dec()"), messages[1]);
+        for (String message : messages) Assertions.assertTrue(message.endsWith(" -1"), message);
+    }
+
+    @Test
+    public void test_executors() {
+        Config.setTestExecutor(CallExecutors.threadPerCall());
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        Config.setTestExecutor(CallExecutors.best());
+        Call<Integer> whenEven = new WhenEven(counter).assertBlocks();
+        assertEquals(2,new Dec(counter).assertUnblocks(whenEven));
+    }
+
+    @Test
+    public void test_exec_wakes_on_termination() {
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        long start = System.nanoTime();
+        // Each execute ends when its call terminates, not when its wait time has passed
+        for (int i = 1; i <= 20; i++) {
+            assertEquals(i, new Inc(counter).w(1000).assertReturns());
+            Assertions.assertTrue(test.getLastExecute().getPollTicks() <= 1);
+        }
+        Assertions.assertTrue(System.nanoTime() - start < 5000000000L);
+    }
+
+    @Test
+    public void test_status_checks_park_until_start() {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isCurrentThreadCpuTimeSupported());
+        // The calls start 300 ms after they are made
+        Config.setTestExecutor(command -> new Thread(() -> {
+                try { Thread.sleep(300); } catch (InterruptedException exc) { }
+                command.run();
+        }).start());
+        Config.setTestWaitTime(1000);
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        Call<Void> await = new VoidCall() {
+                public void execute() throws InterruptedException { latch.await(); }
+                public String toString() { return "latch.await()"; }
+            }.w(10);
+        // Executing and checking the call wait until it has started, parking instead of spinning
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        Execute.exec(await);
+        await.assertIsBlocked();
+        Assertions.assertTrue(System.nanoTime() - start >= 200000000L);
+        Assertions.assertTrue(threads.getCurrentThreadCpuTime() - cpuStart < 100000000L);
+        Config.setTestExecutor(CallExecutors.best());
+        new VoidCall() {
+            public void execute() { latch.countDown(); }
+            public String toString() { return "latch.countDown()"; }
+        }.assertReturns(await);
+    }
+
+    @Test
+    public void test_incremental_blocked_calls() {
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        List<Call<?>> awaits = new java.util.ArrayList<>();
+        for (int i = 1; i <= 10; i++) awaits.add(new Await(counter,i).user("await"+i));
+        Execute parked = Execute.exec(awaits);
+        SeqAssertions.assertUnblocks(parked, List.of());
+        Assertions.assertEquals(10, parked.getBlockedCalls().size());
+        Execute set = Execute.exec(new Set(counter,5).w(500));
+        SeqAssertions.assertUnblocks(set, List.of(set.getCalls().get(0), awaits.get(4)));
+        // The blocked calls of each execute are a snapshot, which later executes do not change
+        Assertions.assertEquals(10, parked.getBlockedCalls().size());
+        Assertions.assertEquals(9, set.getBlockedCalls().size());
+        Assertions.assertFalse(set.getBlockedCalls().contains(awaits.get(4)));
+        Assertions.assertEquals(set.getBlockedCalls(), test.getBlockedCalls());
+        Execute reset = Execute.exec(new Set(counter,0));
+        SeqAssertions.assertUnblocks(reset, reset.getCalls());
+        Assertions.assertEquals(set.getBlockedCalls(), reset.getBlockedCalls());
+    }
+
+    @Test
+    public void test_outcome_publication() {
+        // Every call returns its own value, read consistently with its termination
+        List<Call<?>> calls = new java.util.ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            calls.add(new ReturningCall<Integer>() {
+                public Integer execute() { return value; }
+                public String toString() { return "value("+value+")"; }
+            });
+        }
+        Execute e = Execute.exec(calls);
+        SeqAssertions.assertUnblocks(e, calls);
+        for (int i = 0; i < 100; i++) Assertions.assertEquals(i, calls.get(i).getReturnValue());
+        // A null return value is a value
+        Call<Object> nullCall = new ReturningCall<Object>() {
+            public Object execute() { return null; }
+            public String toString() { return "null()"; }
+        };
+        Assertions.assertNull(nullCall.assertReturns().getReturnValue());
+        // A void call does not return a value
+        Call<Void> voidCall = new VoidCall() {
+            public void execute() { }
+            public String toString() { return "void()"; }
+        }.assertReturns();
+        SeqAssertions.assertFail(voidCall::getReturnValue, false);
+    }
+
+    @Test
+    public void test_adaptive_wait_time() {
+        Config.setTestAdaptiveWaitTime(true);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        for (int i=0; i<24; i++) new Inc(counter).assertUnblocks();
+        Call<Integer> whenEven = new WhenEven(counter).assertBlocks();
+        assertEquals(28,new Inc(counter).assertUnblocks(whenEven));
+        assertEquals(28,whenEven);
+    }
+
+    @Test
+    public void test_trace_window() throws java.io.IOException {
+        Config.setTestTraceWindow(2);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        Call<Integer> inc1 = new Inc(counter);
+        Call<Integer> inc2 = new Inc(counter);
+        Execute.exec(inc1,inc2);
+        SeqAssertions.assertUnblocks(List.of(inc1,inc2));
+        assertEquals(4,new Dec(counter).assertUnblocks());
+        StringBuilder trace = new StringBuilder();
+        test.appendTrace(trace);
+        String[] lines = trace.toString().split("\n");
+        Assertions.assertEquals(6,lines.length,trace::toString);
+        Assertions.assertTrue(lines[0].startsWith("... 2 "),trace::toString);
+        Assertions.assertTrue(lines[5].startsWith("5: dec() --> "),trace::toString);
+    }
+
+    @Test
+    public void test_parallel_alternatives() {
+        Config.setTestParallelAlternatives(true);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        SeqAssertions.checkAlternatives
+            (() -> new Await(counter,5).assertUnblocks(),
+             () -> assertEquals(4,new Inc(counter).assertUnblocks()));
+        assertEquals(5,new Inc(counter).assertUnblocks());
+        SeqAssertions.assertFail
+            (() -> SeqAssertions.checkAlternatives
+             (() -> new Await(counter,7).assertUnblocks(),
+              () -> new Await(counter,8).assertUnblocks()), false);
+    }
+
+    @Test
+    public void test_parallel_alternatives_exceptions() {
+        Config.setTestParallelAlternatives(true);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        Call<?> fail = new Fail();
+        Execute.exec(fail);
+        SeqAssertions.assertUnblocks(fail, List.of(fail));
+        // All alternatives check the exception in parallel; only the last one succeeds
+        Runnable[] alternatives = new Runnable[8];
+        for (int i = 0; i < alternatives.length; i++) {
+            int value = i < alternatives.length - 1 ? 100 + i : 0;
+            alternatives[i] = () -> {
+                SeqAssertions.assertThrown(fail);
+                new Await(counter,value).assertUnblocks();
+            };
+        }
+        SeqAssertions.checkAlternatives(alternatives);
+        // The exception was checked by the winning alternative
+        assertEquals(1,new Inc(counter).assertUnblocks());
+    }
+
+    @Test
+    public void test_parallel_alternatives_reaping() throws InterruptedException {
+        java.util.Queue<Thread> threads = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        UnitTest alternatives = new UnitTest("alternatives");
+        Config.setTestParallelAlternatives(true);
+        Config.setTestExecutor(task -> { Thread thread = new Thread(task); threads.add(thread); thread.start(); });
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        // The first alternative fails, leaving await(5) blocked in its fork
+        SeqAssertions.checkAlternatives
+            (() -> new Await(counter,5).assertUnblocks(),
+             () -> assertEquals(4,new Inc(counter).assertUnblocks()));
+        alternatives.finish();
+        for (Thread thread : threads) {
+            thread.join(1000);
+            Assertions.assertFalse(thread.isAlive(), thread::toString);
+        }
+    }
+
+    @Test
+    public void test_explore() {
+        Explore.schedules(8, 42L, () -> {
+            Counter counter = new CreateCounter().assertGetReturnValue();
+            new Set(counter,3).assertReturns();
+            Call<Integer> inc = new Inc(counter);
+            Call<Integer> dec = new Dec(counter);
+            Execute.exec(inc,dec);
+            SeqAssertions.assertUnblocks(List.of(inc,dec));
+            new AssertIsEqual(counter,3).assertReturns();
+            assertEquals(4,new Inc(counter).assertUnblocks());
+        });
+        org.opentest4j.AssertionFailedError exc =
+            Assertions.assertThrows(org.opentest4j.AssertionFailedError.class,
+                                    () -> Explore.schedules(4, 42L, () -> new Fail().assertReturns()));
+        // All schedules fail, and the first one is reported
+        String firstSeed = Long.toString(new java.util.Random(42L).nextLong());
+        Assertions.assertTrue(exc.getMessage().contains(firstSeed), exc::getMessage);
+    }
+
+    @Test
+    public void test_record_replay() throws java.io.IOException {
+        java.nio.file.Path log = java.nio.file.Files.createTempFile("schedule", ".log");
+        try {
+            new UnitTest("record").recordSchedule(log);
+            Counter counter = new CreateCounter().assertGetReturnValue();
+            new Set(counter,0).assertReturns();
+            Call<Integer> inc = new Inc(counter);
+            Call<Void> await = new Await(counter,1);
+            Execute.exec(inc,await);
+            SeqAssertions.assertUnblocks(List.of(inc,await));
+            UnitTest.getCurrentTest().finish();
+
+            new UnitTest("replay").replaySchedule(log);
+            Counter replayed = new CreateCounter().assertGetReturnValue();
+            new Set(replayed,0).assertReturns();
+            Call<Integer> replayedInc = new Inc(replayed);
+            Call<Void> replayedAwait = new Await(replayed,1);
+            Execute.exec(replayedInc,replayedAwait);
+            SeqAssertions.assertUnblocks(List.of(replayedInc,replayedAwait));
+            UnitTest.getCurrentTest().finish();
+
+            new UnitTest("diverging replay").replaySchedule(log);
+            Counter diverging = new CreateCounter().assertGetReturnValue();
+            new Set(diverging,0).assertReturns();
+            Assertions.assertThrows(org.opentest4j.AssertionFailedError.class,
+                                    () -> Execute.exec(new Inc(diverging),new Await(diverging,2)));
+        } finally {
+            java.nio.file.Files.delete(log);
+        }
+    }
+
+    @Test
+    public void test_call_metrics() {
+        Config.setTestAdaptiveWaitTime(true);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        Call<Void> await = new Await(counter,5).assertBlocks();
+        new Inc(counter).assertReturns();
+        Execute e = Execute.exec(new Inc(counter));
+        SeqAssertions.assertUnblocks(e, List.of(e.getCalls().get(0), await));
+        List<CallMetrics> metrics = test.getCallMetrics();
+        Assertions.assertEquals(5, metrics.size());
+        CallMetrics awaitMetrics = metrics.get(2);
+        Assertions.assertEquals(await.toString(), awaitMetrics.getCall());
+        Assertions.assertTrue(awaitMetrics.isUnblocked());
+        Assertions.assertEquals(2, awaitMetrics.getBlockedExecutes());
+        Assertions.assertTrue(awaitMetrics.getBlockedTime() > 0);
+        Assertions.assertTrue(awaitMetrics.getLatency() >= awaitMetrics.getBlockedTime());
+        Assertions.assertEquals(0, metrics.get(3).getBlockedExecutes());
+        Assertions.assertTrue(UnitTest.getCallLatencies().get(Inc.class.getName()).getCount() >= 2);
+    }
+
+    @Test
+    public void test_result_reporters() throws Exception {
+        java.nio.file.Path json = java.nio.file.Files.createTempFile("results", ".jsonl");
+        java.nio.file.Path xml = java.nio.file.Files.createTempFile("results", ".xml");
+        try {
+            ResultReporter jsonReporter = new JsonLinesResultReporter(json);
+            ResultReporter xmlReporter = new JUnitXmlResultReporter(xml);
+            UnitTest.addResultReporter(jsonReporter);
+            UnitTest.addResultReporter(xmlReporter);
+            UnitTest passing = new UnitTest("reported \"passing\"").setConfigurationDescription("counter");
+            Counter counter = new CreateCounter().assertGetReturnValue();
+            new Set(counter,3).assertReturns();
+            passing.finish();
+            UnitTest failing = new UnitTest("reported failing");
+            new Inc(counter);
+            Assertions.assertThrows(org.opentest4j.AssertionFailedError.class, failing::finish);
+            UnitTest.removeResultReporter(jsonReporter);
+            UnitTest.removeResultReporter(xmlReporter);
+            jsonReporter.close();
+            xmlReporter.close();
+
+            List<String> lines = java.nio.file.Files.readAllLines(json);
+            String passingLine = lines.stream().filter(l -> l.contains("reported \\\"passing")).findFirst().get();
+            Assertions.assertTrue(passingLine.contains("\"configuration\":\"counter\",\"outcome\":\"success\",\"executes\":2,\"calls\":2"), passingLine);
+            String failingLine = lines.stream().filter(l -> l.contains("reported failing")).findFirst().get();
+            Assertions.assertTrue(failingLine.contains("\"outcome\":\"failure\""), failingLine);
+            Assertions.assertTrue(failingLine.contains("was created but never executed"), failingLine);
+
+            org.w3c.dom.Document document =
+                javax.xml.parsers.DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(xml.toFile());
+            org.w3c.dom.NodeList suites = document.getElementsByTagName("testsuite");
+            int failures = 0;
+            for (int i=0; i<suites.getLength(); i++) {
+                org.w3c.dom.Element suite = (org.w3c.dom.Element) suites.item(i);
+                if (suite.getAttribute("name").startsWith("reported"))
+                    failures += Integer.parseInt(suite.getAttribute("failures"));
+            }
+            Assertions.assertEquals(1, failures);
+        } finally {
+            java.nio.file.Files.delete(json);
+            java.nio.file.Files.delete(xml);
+        }
+    }
+
+    @Test
+    public void test_batch_runner() throws Exception {
+        java.nio.file.Path classes =
+            java.nio.file.Paths.get(CallTests.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        BatchRunner runner = new BatchRunner(List.of(), List.of("counter.CallTests")).parallelism(2);
+        for (SubmissionResult result : runner.run(List.of(classes, classes))) {
+            Assertions.assertTrue(result.isSuccessful(), result::toString);
+            Assertions.assertEquals(11, result.getTestsFound());
+        }
+        SubmissionResult timedOut = runner.timeout(1).run(List.of(classes)).get(0);
+        Assertions.assertTrue(timedOut.timedOut());
+        Assertions.assertFalse(timedOut.isSuccessful());
+        // Do not leave the abandoned runner running in this JVM
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("batch-runner-")) {
+                Assertions.assertTrue(thread.isDaemon());
+                thread.join(30000);
+            }
+        }
+    }
+
+    @Test
+    public void test_time_budget_and_reaping() throws InterruptedException {
+        java.util.Queue<Thread> threads = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        UnitTest reaped = new UnitTest("reaped");
+        Config.setTestExecutor(task -> { Thread thread = new Thread(task); threads.add(thread); thread.start(); });
+        Config.setTestTimeBudget(150);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        long start = System.nanoTime();
+        Config.setTestLocale(new java.util.Locale("es"));
+        org.opentest4j.AssertionFailedError exceeded =
+            Assertions.assertThrows(org.opentest4j.AssertionFailedError.class,
+                                    () -> new Await(counter,1).w(1000).assertBlocks());
+        Assertions.assertTrue(System.nanoTime() - start < 1000000000L);
+        Assertions.assertTrue(exceeded.getMessage().startsWith("la prueba excedi\u00f3 su presupuesto de tiempo de 150 ms"),
+                              exceeded::getMessage);
+        // The blocked call did not check its unblocks status, as the budget was exceeded
+        Assertions.assertThrows(org.opentest4j.AssertionFailedError.class, reaped::finish);
+        for (Thread thread : threads) {
+            thread.join(1000);
+            Assertions.assertFalse(thread.isAlive(), thread::toString);
+        }
+    }
+
+    @Test
+    public void test_no_reaping_by_default() throws InterruptedException {
+        java.util.Queue<Thread> threads = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        UnitTest notReaped = new UnitTest("not reaped");
+        Config.setTestExecutor(task -> { Thread thread = new Thread(task); threads.add(thread); thread.start(); });
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        new Await(counter,1).assertBlocks();
+        // Without a time budget or a reap time the blocked call is left blocked
+        notReaped.finish();
+        Thread.sleep(300);
+        Assertions.assertTrue(threads.stream().anyMatch(Thread::isAlive));
+        counter.set(1);
+        for (Thread thread : threads) {
+            thread.join(1000);
+            Assertions.assertFalse(thread.isAlive(), thread::toString);
+        }
+    }
+
+    @Test
+    public void test_quiescence_detection() {
+        Config.setTestQuiescenceDetection(true);
+        // If detection does not work the budget ends the wait (and fails the test) long before the wait time
+        Config.setTestTimeBudget(6000);
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        long start = System.nanoTime();
+        Call<Void> await = new VoidCall() {
+                public void execute() throws InterruptedException { latch.await(); }
+                public String toString() { return "latch.await()"; }
+            }.w(60000).assertBlocks();
+        // Far below the wait time, even on a loaded machine
+        Assertions.assertTrue(System.nanoTime() - start < 5000000000L);
+        new VoidCall() {
+            public void execute() { latch.countDown(); }
+            public String toString() { return "latch.countDown()"; }
+        }.assertReturns(await);
+        // A sleeping call is not quiescent, so the full wait time is used
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        start = System.nanoTime();
+        new Await(counter,1).w(300).assertBlocks();
+        Assertions.assertTrue(System.nanoTime() - start >= 300000000L);
+    }
+
+    @Test
+    public void test_bulk_exec() {
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        List<Call<?>> incs = new java.util.ArrayList<>();
+        for (int i = 0; i < 200; i++) incs.add(new Inc(counter));
+        Execute e = Execute.exec(incs);
+        SeqAssertions.assertUnblocks(e, incs);
+        e = Execute.exec(java.util.stream.IntStream.range(0, 100).mapToObj(i -> new Dec(counter)));
+        Assertions.assertEquals(100, e.getCalls().size());
+        SeqAssertions.assertUnblocks(e, e.getCalls());
+        new AssertIsEqual(counter,100).assertReturns();
+    }
+
+    @Test
+    public void test_bulk_exec_overlap() {
+        // Each call waits until all of them run, so the execute succeeds only if they overlap
+        int n = 50;
+        java.util.concurrent.CyclicBarrier barrier = new java.util.concurrent.CyclicBarrier(n);
+        List<Call<?>> calls = new java.util.ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            calls.add(new VoidCall() {
+                public void execute() throws Exception { barrier.await(10, java.util.concurrent.TimeUnit.SECONDS); }
+                public String toString() { return "barrier.await()"; }
+            }.w(20000));
+        }
+        Execute e = Execute.exec(calls);
+        // A call whose barrier timed out raised an exception, which fails the test when it finishes
+        SeqAssertions.assertUnblocks(e, calls);
+    }
+
+    @Test
+    public void test_bulk_exec_gate_timeout() {
+        // The executor runs only two calls at a time, so the gate opens after the wait time
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(2);
+        try {
+            Config.setTestExecutor(executor);
+            Config.setTestWaitTime(300);
+            Counter counter = new CreateCounter().assertGetReturnValue();
+            new Set(counter,0).assertReturns();
+            List<Call<?>> incs = new java.util.ArrayList<>();
+            for (int i = 0; i < 5; i++) incs.add(new Inc(counter));
+            long start = System.nanoTime();
+            Execute e = Execute.exec(incs);
+            Assertions.assertTrue(System.nanoTime() - start >= 300000000L);
+            SeqAssertions.assertUnblocks(e, incs);
+            new AssertIsEqual(counter,5).assertReturns();
+            // Calls passed as an array are released through the gate as well
+            Call<?>[] moreIncs = { new Inc(counter), new Inc(counter), new Inc(counter) };
+            start = System.nanoTime();
+            e = Execute.exec(moreIncs);
+            Assertions.assertTrue(System.nanoTime() - start >= 300000000L);
+            SeqAssertions.assertUnblocks(e, e.getCalls());
+            new AssertIsEqual(counter,8).assertReturns();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_too_small_executor() {
+        // The only thread of the executor is taken by a blocked call, so the next call never starts
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(1);
+        try {
+            new UnitTest("too small executor");
+            Config.setTestExecutor(executor);
+            Config.setTestWaitTime(200);
+            new VoidCall() {
+                public void execute() throws InterruptedException { latch.await(); }
+                public String toString() { return "latch.await()"; }
+            }.assertBlocks();
+            Call<Void> nop = new VoidCall() {
+                    public void execute() { }
+                    public String toString() { return "nop()"; }
+                }.w(100);
+            RuntimeException exc = Assertions.assertThrows(RuntimeException.class, () -> Execute.exec(nop));
+            Assertions.assertTrue(exc.getMessage().contains("did not start"), exc::getMessage);
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_call_templates() {
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        CallTemplate<Integer> inc = CallTemplate.of("inc()", counter::inc);
+        CallTemplate<Void> await = CallTemplate.ofVoid("await(3)", () -> counter.await(3)).user("await");
+        Call<Void> waiting = await.exec().assertBlocks();
+        Assertions.assertEquals("await", waiting.getUser());
+        for (int i = 1; i < 3; i++) assertEquals(i, inc.exec().assertReturnsValue());
+        inc.exec().assertReturns(waiting);
+        Execute e = Execute.exec(inc.call(), inc.w(100).call());
+        SeqAssertions.assertUnblocks(e, e.getCalls());
+    }
+
+    @Test
+    public void test_call_template_latencies() {
+        Config.setTestAdaptiveWaitTime(true);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        CallTemplate<Integer> inc = CallTemplate.of("templateInc()", counter::inc);
+        CallTemplate<Integer> dec = CallTemplate.of("templateDec()", counter::dec);
+        for (int i = 0; i < 3; i++) inc.exec().assertReturns();
+        for (int i = 0; i < 2; i++) dec.exec().assertReturns();
+        // The latencies of each template are recorded apart from those of other templates
+        Map<String,LatencyHistogram> latencies = UnitTest.getCallLatencies();
+        Assertions.assertEquals(3, latencies.get("templateInc()").getCount());
+        Assertions.assertEquals(2, latencies.get("templateDec()").getCount());
+        Assertions.assertTrue(latencies.keySet().stream().noneMatch(key -> key.startsWith(CallTemplate.class.getName())));
+    }
+
+    @Test
+    public void test_history_view() {
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        List<Execute> history = test.getHistory();
+        Assertions.assertEquals(2, history.size());
+        new Inc(counter).assertReturns();
+        Assertions.assertEquals(3, history.size());
+        Execute last = history.remove(2);
+        Assertions.assertEquals(2, test.getHistory().size());
+        history.add(last);
+        Assertions.assertSame(last, test.getHistory().get(2));
+        // A saved history is not changed by executes appended after restoring an earlier one
+        List<Execute> saved = new java.util.ArrayList<>(history);
+        test.setHistory(saved.subList(0, 2));
+        new Dec(counter).assertReturns();
+        Assertions.assertEquals(3, history.size());
+        Assertions.assertNotSame(last, history.get(2));
+        test.setHistory(saved);
+        Assertions.assertSame(last, history.get(2));
+        for (int i = 0; i < 40; i++) new Inc(counter).assertReturns();
+        Assertions.assertEquals(43, history.size());
+        Assertions.assertSame(last, history.get(2));
+    }
+
+    @Test
+    public void test_compact_calls() throws java.io.IOException {
+        Config.setTestCompactCalls(true);
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,0).assertReturns();
+        Call<Void> await = new Await(counter,3).assertBlocks();
+        new Inc(counter).assertReturnsValue(1);
+        new Inc(counter).assertReturnsValue(2);
+        new Inc(counter).assertReturns(await);
+        Execute last = Execute.exec(new Dec(counter));
+        Assertions.assertEquals(1, last.getCalls().size());
+        Assertions.assertFalse(test.getAllCalls().contains(await));
+        Assertions.assertEquals(1, test.getAllCalls().size());
+        Assertions.assertEquals(7, test.getCallMetrics().size());
+        StringBuilder traceBuilder = new StringBuilder();
+        test.appendTrace(traceBuilder);
+        String trace = traceBuilder.toString();
+        Assertions.assertTrue(trace.contains("inc()"), trace);
+        Assertions.assertTrue(trace.contains("await(3)"), trace);
+        SeqAssertions.assertUnblocks(last, List.of(last.getCalls().get(0)));
+    }
+
+    @Test
+    public void test_alternatives_failure_message() {
+        Counter counter = new CreateCounter().assertGetReturnValue();
+        new Set(counter,3).assertReturns();
+        String[] message = new String[1];
+        SeqAssertions.assertFail
+            (() -> {
+                try {
+                    SeqAssertions.checkAlternatives
+                        (() -> new Await(counter,7).assertUnblocks(),
+                         () -> assertEquals(5,new Inc(counter).assertUnblocks()));
+                } catch (org.opentest4j.AssertionFailedError exc) {
+                    message[0] = exc.getMessage();
+                    throw exc;
+                }
+            }, false);
+        Assertions.assertTrue(message[0].contains("await(7)"), message[0]);
+        Assertions.assertTrue(message[0].contains("inc()"), message[0]);
+        Assertions.assertTrue(message[0].contains("set(3)"), message[0]);
+    }
+
+    @Test
+    public void test_pending_exceptions() {
+        Call<Void> handled = new Fail().assertUnblocks();
+        handled.assertRaisedException();
+        new CreateCounter().assertUnblocks();
+        new Fail().assertUnblocks();
+        String[] message = new String[1];
+        SeqAssertions.assertFail
+            (() -> {
+                try {
+                    Execute.exec(new CreateCounter());
+                } catch (org.opentest4j.AssertionFailedError exc) {
+                    message[0] = exc.getMessage();
+                    throw exc;
+                }
+            }, false);
+        Assertions.assertTrue(message[0].contains("fail()"), message[0]);
+    }
+
     @BeforeEach
     public void start(TestInfo testInfo) {
         test = new UnitTest(testInfo.getDisplayName());